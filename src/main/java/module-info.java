@@ -1,4 +1,5 @@
 module org.autogui.mvn_exec {
     requires org.objectweb.asm;
+    requires java.compiler;
     exports org.autogui.exec;
 }
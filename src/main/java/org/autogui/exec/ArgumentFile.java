@@ -0,0 +1,157 @@
+package org.autogui.exec;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Argument files of the java launcher (<code>java @file</code>) for long command lines.
+ * <ul>
+ *  <li>{@link #write(Path, List)} writes each argument as a quoted line:
+ *      backslashes, double-quotes and line separators are escaped, thus any argument is passed as it is</li>
+ *  <li>files are written to a directory only accessible by the user, checked by {@link UserDirectory#prepare(Path)}.
+ *      the file name is a hash of the contents, thus the same command line reuses the same file,
+ *      and concurrent launches never overwrite a file read by another JVM.
+ *      the name is predictable, thus an existing file is reused only if it is private to the user and has the same contents;
+ *      otherwise it is replaced.
+ *      files older than {@link #EXPIRATION} are deleted when a new file is written</li>
+ *  <li>{@link #readLines(InputStream, Consumer)} reads arguments of a program from a file or stdin, one per line</li>
+ * </ul>
+ * <pre>
+ *     Path file = ArgumentFile.write(dir, List.of("-cp", classpath, "my.pack.MyMain", "arg1"));
+ *     List&lt;String&gt; command = List.of("java", "@" + file);
+ * </pre>
+ */
+public class ArgumentFile {
+    /** the length of a command line above which an argument file is used */
+    public static int THRESHOLD = 32 * 1024;
+    public static Duration EXPIRATION = Duration.ofDays(1);
+
+    /**
+     * @param args arguments
+     * @return the total length of the arguments with separators
+     */
+    public static long getLength(List<String> args) {
+        long len = 0;
+        for (String arg : args) {
+            len += arg.length() + 1;
+        }
+        return len;
+    }
+
+    /**
+     * @param arg an argument
+     * @return the argument enclosed by double-quotes with escaping for the java launcher
+     */
+    public static String quote(String arg) {
+        StringBuilder buf = new StringBuilder(arg.length() + 2);
+        buf.append('"');
+        for (int i = 0, l = arg.length(); i < l; ++i) {
+            char c = arg.charAt(i);
+            switch (c) {
+                case '\\' -> buf.append("\\\\");
+                case '"' -> buf.append("\\\"");
+                case '\n' -> buf.append("\\n");
+                case '\r' -> buf.append("\\r");
+                case '\t' -> buf.append("\\t");
+                case '\f' -> buf.append("\\f");
+                default -> buf.append(c);
+            }
+        }
+        return buf.append('"').toString();
+    }
+
+    /**
+     * @param dir the directory of argument files
+     * @param args arguments written to the file
+     * @return the written or existing file
+     */
+    public static Path write(Path dir, List<String> args) {
+        try {
+            UserDirectory.prepare(dir);
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            StringBuilder buf = new StringBuilder();
+            for (String arg : args) {
+                md.update((arg + "\0").getBytes(StandardCharsets.UTF_8));
+                buf.append(quote(arg)).append('\n');
+            }
+            byte[] data = buf.toString().getBytes(StandardCharsets.UTF_8);
+            Path file = dir.resolve(HexFormat.of().formatHex(md.digest()) + ".args");
+            if (hasContents(file, data)) {
+                Files.setLastModifiedTime(file, FileTime.from(Instant.now()));
+                return file;
+            }
+            deleteExpired(dir);
+            Path tmp = Files.createTempFile(dir, "args", ".tmp");
+            try {
+                Files.write(tmp, data);
+                Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+            return file;
+        } catch (Exception ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    /**
+     * @param file an existing argument file
+     * @param data the expected contents
+     * @return true if the file is a regular file private to the user and has the contents
+     */
+    public static boolean hasContents(Path file, byte[] data) {
+        try {
+            if (!Files.isRegularFile(file, LinkOption.NOFOLLOW_LINKS)) {
+                return false;
+            }
+            UserDirectory.check(file);
+            return Files.size(file) == data.length && Arrays.equals(Files.readAllBytes(file), data);
+        } catch (IOException ex) {
+            return false;
+        }
+    }
+
+    public static void deleteExpired(Path dir) throws IOException {
+        Instant limit = Instant.now().minus(EXPIRATION);
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path p : (Iterable<Path>) files::iterator) {
+                try {
+                    if (Files.getLastModifiedTime(p).toInstant().isBefore(limit)) {
+                        Files.deleteIfExists(p);
+                    }
+                } catch (IOException ex) {
+                    //deleted by another process
+                }
+            }
+        }
+    }
+
+    /**
+     * @param in a stream of lines; it is not closed
+     * @param lines receives each line
+     */
+    public static void readLines(InputStream in, Consumer<String> lines) {
+        try {
+            BufferedReader r = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+            String line;
+            while ((line = r.readLine()) != null) {
+                lines.accept(line);
+            }
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package org.autogui.exec;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * An AppCDS archive of a launched program, saved as <code>target/.mvn-exec-cds/&lt;fingerprint&gt;.jsa</code>.
+ * <ul>
+ *  <li>{@link #getOptions(Path)} returns <code>-XX:+AutoCreateSharedArchive -XX:SharedArchiveFile=...</code>;
+ *      the JVM (JDK 19 or later) dumps loaded classes to the file at the exit and maps it at the next start</li>
+ *  <li>the file name is a fingerprint of the classpath and
+ *      the <code>release</code> file of the JDK, thus a new archive is created when either is changed.
+ *      other archives in the directory are deleted as stale.
+ *      the JVM also validates the archive by itself and re-creates it if classes directories or jars are modified</li>
+ *  <li>the JVM cannot dump an archive with a non-empty directory in the classpath,
+ *      thus {@link #getClasspathForArchive(List)} replaces classes directories with jars in the archive directory.
+ *      a jar is re-created when a file or a sub-directory in the directory is newer than the jar</li>
+ *  <li>the JDK is found from the java command; a command without a directory is searched in <code>PATH</code></li>
+ * </ul>
+ * <pre>
+ *     CdsArchive cds = new CdsArchive(projectDir);
+ *     String release = CdsArchive.getRelease(CdsArchive.getJavaHome("java", System.getenv()));
+ *     if (CdsArchive.isSupported(release)) {
+ *         command.addAll(cds.getOptions(cds.getArchiveFile(cds.getFingerprint(release, classpath))));
+ *     }
+ * </pre>
+ */
+public class CdsArchive {
+    public static String ARCHIVE_DIR_NAME = ".mvn-exec-cds";
+    public static int MIN_FEATURE_VERSION = 19;
+
+    protected File projectDir;
+    protected Path archiveDir;
+
+    public CdsArchive(File projectDir) {
+        this.projectDir = projectDir;
+        this.archiveDir = projectDir.toPath().resolve("target").resolve(ARCHIVE_DIR_NAME);
+    }
+
+    public Path getArchiveDir() {
+        return archiveDir;
+    }
+
+    /**
+     * @param javaCommand a java command like <code>/usr/lib/jvm/jdk/bin/java</code> or <code>java</code>
+     * @param env the environment for searching <code>PATH</code>
+     * @return the home directory of the JDK, or null if not found
+     */
+    public static Path getJavaHome(String javaCommand, Map<String, String> env) {
+        Path cmd = Paths.get(javaCommand);
+        if (cmd.getParent() == null) {
+            cmd = null;
+            for (String dir : env.getOrDefault("PATH", "").split(File.pathSeparator)) {
+                Path p = Paths.get(dir.isEmpty() ? "." : dir, javaCommand);
+                if (Files.isExecutable(p)) {
+                    cmd = p;
+                    break;
+                }
+            }
+        }
+        try {
+            Path bin = (cmd == null ? null : cmd.toRealPath().getParent());
+            return bin == null ? null : bin.getParent();
+        } catch (IOException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * @param javaHome the home directory of a JDK
+     * @return the content of <code>release</code>, or null
+     */
+    public static String getRelease(Path javaHome) {
+        try {
+            return javaHome == null ? null : Files.readString(javaHome.resolve("release"), StandardCharsets.UTF_8);
+        } catch (IOException ex) {
+            return null;
+        }
+    }
+
+    static Pattern javaVersionPattern = Pattern.compile("JAVA_VERSION=\"(?:1\\.)?(\\d+)");
+
+    /**
+     * @param release the content of the release file of a JDK
+     * @return true if the JDK supports <code>-XX:+AutoCreateSharedArchive</code>
+     */
+    public static boolean isSupported(String release) {
+        if (release == null) {
+            return false;
+        }
+        Matcher m = javaVersionPattern.matcher(release);
+        return m.find() && Integer.parseInt(m.group(1)) >= MIN_FEATURE_VERSION;
+    }
+
+    /**
+     * @param release the content of the release file of the JDK
+     * @param keys the classpath entries, or other keys of the classpath
+     * @return a hex string of SHA-256 of the project, the JDK and the keys
+     */
+    public String getFingerprint(String release, List<String> keys) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            md.update(projectDir.getAbsolutePath().getBytes(StandardCharsets.UTF_8));
+            md.update((byte) 0);
+            md.update(release.getBytes(StandardCharsets.UTF_8));
+            md.update((byte) 0);
+            for (String key : keys) {
+                md.update(key.getBytes(StandardCharsets.UTF_8));
+                md.update((byte) 0);
+            }
+            return HexFormat.of().formatHex(md.digest());
+        } catch (Exception ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    /**
+     * @param classpath classpath entries
+     * @return the classpath whose directories are replaced with jars of their contents
+     */
+    public List<String> getClasspathForArchive(List<String> classpath) {
+        List<String> result = new ArrayList<>(classpath.size());
+        for (String e : classpath) {
+            Path dir = Paths.get(e);
+            if (Files.isDirectory(dir)) {
+                Path jar = archiveDir.resolve(getDirectoryJarName(dir));
+                try {
+                    if (isStale(dir, jar)) {
+                        createJar(dir, jar);
+                    }
+                } catch (IOException ex) {
+                    throw new RuntimeException(ex);
+                }
+                result.add(jar.toString());
+            } else {
+                result.add(e);
+            }
+        }
+        return result;
+    }
+
+    public static String getDirectoryJarName(Path dir) {
+        String path = dir.toAbsolutePath().normalize().toString();
+        return dir.getFileName() + "-" + Integer.toHexString(path.hashCode()) + ".jar";
+    }
+
+    /**
+     * @param dir a classes directory
+     * @param jar the jar of the directory
+     * @return true if the jar does not exist or an entry of the directory is newer than the jar.
+     *           sub-directories are also checked for detecting deleted files
+     */
+    public static boolean isStale(Path dir, Path jar) throws IOException {
+        if (!Files.isRegularFile(jar)) {
+            return true;
+        }
+        long jarTime = Files.getLastModifiedTime(jar).toMillis();
+        try (Stream<Path> files = Files.walk(dir)) {
+            return files.anyMatch(p -> {
+                try {
+                    return Files.getLastModifiedTime(p).toMillis() > jarTime;
+                } catch (IOException ex) {
+                    return true;
+                }
+            });
+        }
+    }
+
+    /**
+     * writes regular files of the directory to a temporary jar without compression and replaces the jar by it
+     * @param dir the source directory
+     * @param jar the target jar
+     */
+    public static void createJar(Path dir, Path jar) throws IOException {
+        Files.createDirectories(jar.getParent());
+        Path tmp = Files.createTempFile(jar.getParent(), jar.getFileName().toString(), ".tmp");
+        try {
+            try (ZipOutputStream out = new ZipOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)));
+                 Stream<Path> files = Files.walk(dir)) {
+                out.setLevel(Deflater.NO_COMPRESSION);
+                for (Path p : (Iterable<Path>) files.sorted()::iterator) {
+                    if (Files.isRegularFile(p)) {
+                        out.putNextEntry(new ZipEntry(dir.relativize(p).toString().replace(File.separatorChar, '/')));
+                        Files.copy(p, out);
+                        out.closeEntry();
+                    }
+                }
+            }
+            Files.move(tmp, jar, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    public Path getArchiveFile(String fingerprint) {
+        return archiveDir.resolve(fingerprint + ".jsa");
+    }
+
+    /**
+     * creates the directory and deletes other archives
+     * @param archiveFile the current archive
+     * @return the JVM options for the archive
+     */
+    public List<String> getOptions(Path archiveFile) {
+        try {
+            Files.createDirectories(archiveDir);
+            try (DirectoryStream<Path> ds = Files.newDirectoryStream(archiveDir, "*.jsa")) {
+                for (Path p : ds) {
+                    if (!p.getFileName().equals(archiveFile.getFileName())) {
+                        Files.deleteIfExists(p);
+                    }
+                }
+            }
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+        return List.of("-XX:+AutoCreateSharedArchive", "-XX:SharedArchiveFile=" + archiveFile);
+    }
+}
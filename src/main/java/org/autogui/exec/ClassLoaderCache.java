@@ -0,0 +1,156 @@
+package org.autogui.exec;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.*;
+
+/**
+ * A cache of class-loaders of dependency jars for running programs repeatedly in a resident JVM.
+ * <ul>
+ *  <li>{@link #getLoader(List)} returns a loader of the jars, shared by runs with the same jars;
+ *      a run creates a fresh child loader only for <code>target/classes</code> and <code>target/test-classes</code>,
+ *      thus classes of dependencies are loaded and JIT-compiled once</li>
+ *  <li>loaders are keyed by a fingerprint of paths, sizes and last-modified times of the jars;
+ *      a rebuilt jar causes a new loader</li>
+ *  <li>the memory usage of a loader is estimated by the total size of its jars.
+ *      least-recently used loaders are closed and evicted while the total exceeds <code>budgetBytes</code></li>
+ *  <li>a loader obtained by {@link #acquire(List)} is not evicted until {@link #release(ClassLoader)},
+ *      because threads of a program can still load classes after the run returns</li>
+ * </ul>
+ * <pre>
+ *     ClassLoaderCache cache = new ClassLoaderCache(512L &lt;&lt; 20);
+ *     ClassLoader deps = cache.acquire(jars);
+ *     ClassLoader app = new InProcessLauncher.IsolatedClassLoader(classesDirUrls, deps);
+ *     ...
+ *     cache.release(deps); //after threads of the program terminate
+ * </pre>
+ */
+public class ClassLoaderCache {
+    protected long budgetBytes;
+    protected long totalBytes;
+    protected LinkedHashMap<String, CachedLoader> loaders = new LinkedHashMap<>(16, 0.75f, true);
+    protected ClassLoader parent;
+    /** the number of users of each acquired loader */
+    protected Map<ClassLoader, Integer> users = new IdentityHashMap<>();
+
+    public record CachedLoader(URLClassLoader loader, long size) {}
+
+    public ClassLoaderCache(long budgetBytes) {
+        this(budgetBytes, ClassLoader.getPlatformClassLoader());
+    }
+
+    public ClassLoaderCache(long budgetBytes, ClassLoader parent) {
+        this.budgetBytes = budgetBytes;
+        this.parent = parent;
+    }
+
+    public long getBudgetBytes() {
+        return budgetBytes;
+    }
+
+    public synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public synchronized int size() {
+        return loaders.size();
+    }
+
+    /**
+     * @param jars dependency jars
+     * @return a cached or new loader of the jars
+     */
+    public synchronized ClassLoader getLoader(List<String> jars) {
+        String key = getFingerprint(jars);
+        CachedLoader cached = loaders.get(key);
+        if (cached == null) {
+            long size = 0;
+            URL[] urls = new URL[jars.size()];
+            try {
+                for (int i = 0; i < urls.length; ++i) {
+                    File jar = new File(jars.get(i));
+                    urls[i] = jar.toURI().toURL();
+                    size += jar.length();
+                }
+            } catch (Exception ex) {
+                throw new RuntimeException(ex);
+            }
+            cached = new CachedLoader(new InProcessLauncher.IsolatedClassLoader(urls, parent), size);
+            loaders.put(key, cached);
+            totalBytes += size;
+            evict(key);
+        }
+        return cached.loader();
+    }
+
+    /**
+     * @param jars dependency jars
+     * @return a cached or new loader of the jars, which is never evicted until {@link #release(ClassLoader)}
+     */
+    public synchronized ClassLoader acquire(List<String> jars) {
+        ClassLoader loader = getLoader(jars);
+        users.merge(loader, 1, Integer::sum);
+        return loader;
+    }
+
+    /**
+     * @param loader a loader obtained by {@link #acquire(List)}; it can be evicted if no other user holds it
+     */
+    public synchronized void release(ClassLoader loader) {
+        users.computeIfPresent(loader, (l, n) -> n > 1 ? n - 1 : null);
+        evict(null);
+    }
+
+    public synchronized boolean isInUse(ClassLoader loader) {
+        return users.containsKey(loader);
+    }
+
+    /**
+     * closes least-recently used loaders while the total size exceeds the budget.
+     *  loaders in use are skipped, thus the total can temporarily exceed the budget
+     * @param keep the key of the loader which is not evicted, or null
+     */
+    protected void evict(String keep) {
+        Iterator<Map.Entry<String, CachedLoader>> iter = loaders.entrySet().iterator();
+        while (totalBytes > budgetBytes && iter.hasNext()) {
+            Map.Entry<String, CachedLoader> e = iter.next();
+            if (!e.getKey().equals(keep) && !users.containsKey(e.getValue().loader())) {
+                iter.remove();
+                totalBytes -= e.getValue().size();
+                close(e.getValue());
+            }
+        }
+    }
+
+    protected void close(CachedLoader cached) {
+        try {
+            cached.loader().close();
+        } catch (IOException ex) {
+            //ignore
+        }
+    }
+
+    public synchronized void clear() {
+        loaders.values().forEach(this::close);
+        loaders.clear();
+        users.clear();
+        totalBytes = 0;
+    }
+
+    public static String getFingerprint(List<String> jars) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            for (String jar : jars) {
+                File f = new File(jar);
+                md.update((jar + "\t" + f.length() + "\t" + f.lastModified() + "\n").getBytes(StandardCharsets.UTF_8));
+            }
+            return HexFormat.of().formatHex(md.digest());
+        } catch (Exception ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package org.autogui.exec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * A parallel engine for reading and parsing class-files.
+ * <ul>
+ *  <li>{@link #map(List, Processor)} applies a function to each file on a {@link ForkJoinPool}
+ *       and returns the results in the order of the given list</li>
+ *  <li>{@link #forEach(List, Processor, Consumer)} is the streaming version of map;
+ *       non-null results are passed to a consumer without collecting them</li>
+ *  <li>{@link #read(Path)} reads entire bytes of a file and closes it immediately;
+ *       the number of simultaneously opened files is limited by <code>maxOpenFiles</code></li>
+ * </ul>
+ * <pre>
+ *     ClassScanner scanner = new ClassScanner();
+ *     List&lt;String&gt; names = scanner.map(classFiles, p -&gt;
+ *              new MainFinder(pattern).matchClass(scanner.read(p)));
+ * </pre>
+ */
+public class ClassScanner {
+    public interface Processor<R> {
+        R process(Path file) throws Exception;
+    }
+
+    protected int parallelism;
+    protected int maxOpenFiles;
+    protected Semaphore openFiles;
+    protected ForkJoinPool pool;
+    protected LongAdder matchedCount = new LongAdder();
+    protected LongAdder rejectedCount = new LongAdder();
+
+    /** the number of files under which {@link #map(List, Processor)} runs sequentially on the caller thread */
+    public static int SEQUENTIAL_THRESHOLD = 64;
+
+    public ClassScanner() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public ClassScanner(int parallelism) {
+        this(parallelism, Math.max(1, parallelism) * 2);
+    }
+
+    public ClassScanner(int parallelism, int maxOpenFiles) {
+        this.parallelism = Math.max(1, parallelism);
+        this.maxOpenFiles = Math.max(1, maxOpenFiles);
+        openFiles = new Semaphore(this.maxOpenFiles);
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public int getMaxOpenFiles() {
+        return maxOpenFiles;
+    }
+
+    protected synchronized ForkJoinPool getPool() {
+        if (pool == null) {
+            pool = new ForkJoinPool(parallelism, ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, false);
+        }
+        return pool;
+    }
+
+    /**
+     * @param files  processed files
+     * @param f  the function for each file, which may return null
+     * @return the results of f in the order of files
+     * @param <R> the result type
+     */
+    public <R> List<R> map(List<Path> files, Processor<R> f) {
+        if (parallelism <= 1 || files.size() < SEQUENTIAL_THRESHOLD) {
+            return files.stream()
+                    .map(p -> process(p, f))
+                    .toList();
+        }
+        try {
+            return getPool().submit(() -> files.parallelStream()
+                            .map(p -> process(p, f))
+                            .toList())
+                    .get();
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException re) {
+                throw re;
+            } else {
+                throw new RuntimeException(ex.getCause());
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(ex);
+        }
+    }
+
+    /**
+     * @param files  processed files
+     * @param f  the function for each file, which may return null
+     * @param consumer  receives non-null results of f in the order of files, one by one on a single thread at a time
+     * @param <R> the result type
+     */
+    public <R> void forEach(List<Path> files, Processor<R> f, Consumer<? super R> consumer) {
+        if (parallelism <= 1 || files.size() < SEQUENTIAL_THRESHOLD) {
+            for (Path p : files) {
+                R r = process(p, f);
+                if (r != null) {
+                    consumer.accept(r);
+                }
+            }
+            return;
+        }
+        try {
+            getPool().submit(() -> files.parallelStream()
+                            .map(p -> process(p, f))
+                            .filter(Objects::nonNull)
+                            .forEachOrdered(consumer))
+                    .get();
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException re) {
+                throw re;
+            } else {
+                throw new RuntimeException(ex.getCause());
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(ex);
+        }
+    }
+
+    protected <R> R process(Path file, Processor<R> f) {
+        try {
+            return f.process(file);
+        } catch (RuntimeException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    /**
+     * reads the entire file; it blocks while the number of opened files exceeds <code>maxOpenFiles</code>
+     * @param file the read file
+     * @return the content of the file
+     * @throws IOException failure of reading
+     */
+    public byte[] read(Path file) throws IOException {
+        openFiles.acquireUninterruptibly();
+        try (InputStream in = Files.newInputStream(file)) {
+            return in.readAllBytes();
+        } finally {
+            openFiles.release();
+        }
+    }
+
+    /**
+     * reads the class-file and runs {@link MainFinder#matchClass(byte[])}, with counting rejections by the constant-pool check
+     * @param file the class-file
+     * @param finder a new finder for the file
+     * @return the result of the finder
+     * @throws IOException failure of reading
+     */
+    public String matchClass(Path file, MainFinder finder) throws IOException {
+        String name = finder.matchClass(read(file));
+        matchedCount.increment();
+        if (finder.isConstantPoolRejected()) {
+            rejectedCount.increment();
+        }
+        return name;
+    }
+
+    /**
+     * @return the total number of class-files checked by {@link #matchClass(Path, MainFinder)}
+     */
+    public long getMatchedCount() {
+        return matchedCount.sum();
+    }
+
+    /**
+     * @return the total number of class-files skipped by the constant-pool check of {@link MainFinder#hasMainCandidate(byte[])}
+     */
+    public long getRejectedCount() {
+        return rejectedCount.sum();
+    }
+
+    /**
+     * terminates worker threads. the scanner can be reused after the call
+     */
+    public synchronized void shutdown() {
+        if (pool != null) {
+            pool.shutdown();
+            pool = null;
+        }
+    }
+}
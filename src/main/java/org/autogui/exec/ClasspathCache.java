@@ -0,0 +1,176 @@
+package org.autogui.exec;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A cache of the resolved test-scope classpath of a project, saved as <code>target/.mvn-exec-classpath</code>.
+ * <ul>
+ *  <li>the cache is keyed by a fingerprint of the contents of <code>pom.xml</code>
+ *      and its parent poms found by <code>&lt;relativePath&gt;</code> (the default is <code>../pom.xml</code>),
+ *      with additional keys like options for Maven</li>
+ *  <li>{@link #load(String)} returns null if the saved fingerprint differs; then the caller resolves the classpath
+ *      by Maven (e.g. <code>mvn dependency:build-classpath</code>) and {@link #save(String, List)}s it</li>
+ *  <li>parent poms obtained from repositories are not checked; they are supposed to be unchanged released artifacts</li>
+ * </ul>
+ * <pre>
+ *     ClasspathCache cache = new ClasspathCache(projectDir);
+ *     String fp = cache.getFingerprint(mvnOptions);
+ *     List&lt;String&gt; cp = cache.load(fp);
+ *     if (cp == null) {
+ *         cp = resolve(...);
+ *         cache.save(fp, cp);
+ *     }
+ * </pre>
+ */
+public class ClasspathCache {
+    public static String CACHE_FILE_NAME = ".mvn-exec-classpath";
+    public static String CACHE_HEADER = "mvn-exec-classpath 1";
+    /** the limit of the depth of parent poms, for avoiding cyclic relative paths */
+    public static int MAX_PARENT_DEPTH = 32;
+
+    protected File projectDir;
+    protected Path cacheFile;
+
+    public ClasspathCache(File projectDir) {
+        this(projectDir, projectDir.toPath().resolve("target").resolve(CACHE_FILE_NAME));
+    }
+
+    public ClasspathCache(File projectDir, Path cacheFile) {
+        this.projectDir = projectDir;
+        this.cacheFile = cacheFile;
+    }
+
+    public File getProjectDir() {
+        return projectDir;
+    }
+
+    public Path getCacheFile() {
+        return cacheFile;
+    }
+
+    static Pattern parentPattern = Pattern.compile("<parent>(.*?)</parent>", Pattern.DOTALL);
+    static Pattern relativePathPattern = Pattern.compile("<relativePath\\s*/>|<relativePath>(.*?)</relativePath>", Pattern.DOTALL);
+
+    /**
+     * @param pomFile a pom.xml
+     * @return the pomFile followed by its parent poms existing in the file-system
+     * @throws IOException failure of reading
+     */
+    public static List<Path> getPomFiles(Path pomFile) throws IOException {
+        List<Path> poms = new ArrayList<>();
+        Path pom = pomFile.toAbsolutePath().normalize();
+        while (pom != null && Files.isRegularFile(pom) && !poms.contains(pom) && poms.size() < MAX_PARENT_DEPTH) {
+            poms.add(pom);
+            pom = getParentPomFile(pom, Files.readString(pom, StandardCharsets.UTF_8));
+        }
+        return poms;
+    }
+
+    /**
+     * @param pom a pom.xml
+     * @param content the content of the pom
+     * @return the parent pom referred by the relative path of the parent, or null
+     */
+    public static Path getParentPomFile(Path pom, String content) {
+        Matcher parent = parentPattern.matcher(content);
+        if (!parent.find()) {
+            return null;
+        }
+        String rel = "../pom.xml";
+        Matcher relPath = relativePathPattern.matcher(parent.group(1));
+        if (relPath.find()) {
+            rel = relPath.group(1) == null ? "" : relPath.group(1).trim();
+        }
+        if (rel.isEmpty()) { //<relativePath/>: lookup from repositories
+            return null;
+        }
+        Path parentPom = pom.getParent().resolve(rel).normalize();
+        if (Files.isDirectory(parentPom)) {
+            parentPom = parentPom.resolve("pom.xml");
+        }
+        return parentPom;
+    }
+
+    /**
+     * @param keys additional keys affecting resolution, like options for Maven
+     * @return a hex string of SHA-256 of the paths and contents of the poms, and the keys
+     */
+    public String getFingerprint(List<String> keys) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            for (Path pom : getPomFiles(projectDir.toPath().resolve("pom.xml"))) {
+                md.update(pom.toString().getBytes(StandardCharsets.UTF_8));
+                md.update((byte) 0);
+                md.update(Files.readAllBytes(pom));
+                md.update((byte) 0);
+            }
+            for (String key : keys) {
+                md.update(key.getBytes(StandardCharsets.UTF_8));
+                md.update((byte) 0);
+            }
+            return HexFormat.of().formatHex(md.digest());
+        } catch (Exception ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    /**
+     * @param fingerprint the current fingerprint
+     * @return the cached classpath entries, or null if no cache or the cache is stale
+     */
+    public List<String> load(String fingerprint) {
+        if (!Files.isRegularFile(cacheFile)) {
+            return null;
+        }
+        try {
+            List<String> lines = Files.readAllLines(cacheFile, StandardCharsets.UTF_8);
+            if (lines.size() < 2 || !lines.get(0).equals(CACHE_HEADER) || !lines.get(1).equals(fingerprint)) {
+                return null;
+            }
+            return new ArrayList<>(lines.subList(2, lines.size()));
+        } catch (Exception ex) {
+            return null;
+        }
+    }
+
+    /**
+     * writes the classpath to a temporary file and replaces the cache file by an atomic move
+     * @param fingerprint the fingerprint of the resolution
+     * @param classpath resolved classpath entries
+     * @throws IOException failure of writing
+     */
+    public void save(String fingerprint, List<String> classpath) throws IOException {
+        Path dir = cacheFile.getParent();
+        Files.createDirectories(dir);
+        Path tmp = Files.createTempFile(dir, cacheFile.getFileName().toString(), ".tmp");
+        try {
+            try (BufferedWriter w = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                w.write(CACHE_HEADER);
+                w.write('\n');
+                w.write(fingerprint);
+                w.write('\n');
+                for (String e : classpath) {
+                    w.write(e);
+                    w.write('\n');
+                }
+            }
+            try {
+                Files.move(tmp, cacheFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(tmp, cacheFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+}
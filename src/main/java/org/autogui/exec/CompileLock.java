@@ -0,0 +1,95 @@
+package org.autogui.exec;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * An exclusive lock of compilation of a project, shared by processes and threads, on <code>target/.mvn-exec-compile.lock</code>.
+ * <ul>
+ *  <li>{@link #acquire(Path)} blocks until no other process or thread holds the lock of the project.
+ *      the waiting time is available by {@link #getWaitTime()}</li>
+ *  <li>a {@link FileLock} is held by a JVM, thus threads of a JVM (e.g. requests of {@link MavenExecDaemon})
+ *      are serialized by a {@link ReentrantLock} of the file before locking the file</li>
+ *  <li>the OS releases the file lock if the process is killed; the file itself is left</li>
+ * </ul>
+ * <pre>
+ *     try (CompileLock lock = CompileLock.acquire(projectDir.toPath())) {
+ *         //check sources again, and compile if needed
+ *     }
+ * </pre>
+ */
+public class CompileLock implements AutoCloseable {
+    public static String LOCK_FILE_NAME = ".mvn-exec-compile.lock";
+
+    protected static Map<Path, ReentrantLock> threadLocks = new ConcurrentHashMap<>();
+
+    protected ReentrantLock threadLock;
+    protected FileChannel channel;
+    protected FileLock fileLock;
+    protected Duration waitTime;
+
+    protected CompileLock(ReentrantLock threadLock, FileChannel channel, FileLock fileLock, Duration waitTime) {
+        this.threadLock = threadLock;
+        this.channel = channel;
+        this.fileLock = fileLock;
+        this.waitTime = waitTime;
+    }
+
+    public static Path getLockFile(Path projectDir) {
+        return projectDir.resolve("target").resolve(LOCK_FILE_NAME);
+    }
+
+    /**
+     * @param projectDir the project directory; <code>target</code> is created if missing
+     * @return the acquired lock
+     */
+    public static CompileLock acquire(Path projectDir) {
+        Path file = getLockFile(projectDir).toAbsolutePath().normalize();
+        Instant start = Instant.now();
+        ReentrantLock threadLock = threadLocks.computeIfAbsent(file, f -> new ReentrantLock());
+        threadLock.lock();
+        FileChannel channel = null;
+        try {
+            Files.createDirectories(file.getParent());
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            FileLock fileLock = channel.lock();
+            return new CompileLock(threadLock, channel, fileLock, Duration.between(start, Instant.now()));
+        } catch (Throwable ex) {
+            try {
+                if (channel != null) {
+                    channel.close();
+                }
+            } catch (IOException ex2) {
+                //ignore
+            }
+            threadLock.unlock();
+            throw new RuntimeException(ex);
+        }
+    }
+
+    /** @return the time until the lock was acquired */
+    public Duration getWaitTime() {
+        return waitTime;
+    }
+
+    @Override
+    public void close() {
+        try {
+            fileLock.release();
+            channel.close();
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        } finally {
+            threadLock.unlock();
+        }
+    }
+}
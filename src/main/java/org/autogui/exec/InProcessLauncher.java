@@ -0,0 +1,222 @@
+package org.autogui.exec;
+
+import java.io.File;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * A launcher running a main-class in the current JVM with an isolated class-loader.
+ * <ul>
+ *  <li>the class-loader is a {@link URLClassLoader} of the given classpath
+ *      (e.g. <code>target/test-classes</code>, <code>target/classes</code> and dependencies)
+ *      whose parent is the platform class-loader.
+ *      packages of JDK modules in the boot layer (e.g. <code>javax.xml.parsers</code> and <code>org.w3c.dom</code>) are delegated to the parent first
+ *      as the application class-loader of <code>java -cp</code>, thus a jar like <code>xml-apis</code> never defines copies of them.
+ *      other classes are searched in the classpath first, because built-in loaders also delegate packages of
+ *      mvn-exec and ASM in the boot layer, and the program can use another version of ASM than mvn-exec</li>
+ *  <li><code>main(String[])</code> is invoked on a dedicated thread named "main"
+ *      with the context class-loader and <code>java.class.path</code> of the classpath</li>
+ *  <li>system-properties are set before the invocation</li>
+ *  <li>{@link #run(String, List)} waits for the return of the main method;
+ *      like a separate JVM, the process continues while other non-daemon threads of the program are running</li>
+ *  <li>{@link #closeAfterProgram(URLClassLoader)} closes the loader after those threads terminate</li>
+ * </ul>
+ * <pre>
+ *     int code = new InProcessLauncher(classpath)
+ *          .setProperties(propertySettings)
+ *          .run("my.pack.MyMain", args);
+ * </pre>
+ */
+public class InProcessLauncher {
+    protected List<String> classpath;
+    protected ClassLoader parent;
+    protected List<Map.Entry<String, String>> properties = List.of();
+    protected Throwable failure;
+
+    public InProcessLauncher(List<String> classpath) {
+        this(classpath, ClassLoader.getPlatformClassLoader());
+    }
+
+    public InProcessLauncher(List<String> classpath, ClassLoader parent) {
+        this.classpath = classpath;
+        this.parent = parent;
+    }
+
+    public InProcessLauncher setProperties(List<Map.Entry<String, String>> properties) {
+        this.properties = properties;
+        return this;
+    }
+
+    public List<String> getClasspath() {
+        return classpath;
+    }
+
+    /**
+     * @return the exception thrown by the last main method, or null
+     */
+    public Throwable getFailure() {
+        return failure;
+    }
+
+    public ClassLoader createClassLoader() {
+        return createClassLoader(classpath, parent);
+    }
+
+    public static IsolatedClassLoader createClassLoader(List<String> classpath, ClassLoader parent) {
+        try {
+            URL[] urls = new URL[classpath.size()];
+            for (int i = 0; i < urls.length; ++i) {
+                urls[i] = new File(classpath.get(i)).toURI().toURL();
+            }
+            return new IsolatedClassLoader(urls, parent);
+        } catch (Exception ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    /**
+     * @param mainClass the name of the main class
+     * @param args arguments for the main method
+     * @return 0 if the main method returned, or 1 if it threw an exception
+     */
+    public int run(String mainClass, List<String> args) {
+        return run(createClassLoader(), mainClass, args);
+    }
+
+    public int run(ClassLoader loader, String mainClass, List<String> args) {
+        for (Map.Entry<String, String> p : properties) {
+            System.setProperty(p.getKey(), p.getValue());
+        }
+        System.setProperty("java.class.path", String.join(File.pathSeparator, classpath));
+        failure = null;
+        Thread thread = new Thread(() -> invokeMain(loader, mainClass, args), "main");
+        thread.setDaemon(false); //the caller can be a daemon or virtual thread, e.g. a request of the daemon
+        thread.setContextClassLoader(loader);
+        thread.start();
+        try {
+            thread.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(ex);
+        }
+        return failure == null ? 0 : 1;
+    }
+
+    /**
+     * closes the loader of a finished run after all non-daemon threads of the program terminate.
+     *  if some of them are running, a daemon thread waits for them and then closes the loader
+     * @param loader the loader passed to {@link #run(ClassLoader, String, List)}
+     * @return the waiting thread, or null if the loader is already closed
+     */
+    public static Thread closeAfterProgram(URLClassLoader loader) {
+        return closeAfterProgram(loader, () -> {});
+    }
+
+    /**
+     * @param loader the loader passed to {@link #run(ClassLoader, String, List)}
+     * @param afterClose a task run after closing the loader, e.g. releasing the parent loader of {@link ClassLoaderCache#acquire(List)}
+     * @return the waiting thread, or null if the loader is already closed
+     */
+    public static Thread closeAfterProgram(URLClassLoader loader, Runnable afterClose) {
+        if (getProgramThreads(loader).isEmpty()) {
+            close(loader);
+            afterClose.run();
+            return null;
+        }
+        Thread thread = new Thread(() -> {
+            try {
+                List<Thread> threads;
+                while (!(threads = getProgramThreads(loader)).isEmpty()) {
+                    for (Thread t : threads) {
+                        t.join();
+                    }
+                }
+                close(loader);
+                afterClose.run();
+            } catch (InterruptedException ex) {
+                //the loader is left open
+            }
+        }, "mvn-exec-loader-closer");
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * @param loader the loader of a run
+     * @return alive non-daemon threads whose context class-loader is the loader,
+     *   i.e. threads started by the program, which inherit it from the "main" thread by default
+     */
+    public static List<Thread> getProgramThreads(ClassLoader loader) {
+        return Thread.getAllStackTraces().keySet().stream()
+                .filter(t -> t != Thread.currentThread() && t.isAlive() && !t.isDaemon() && t.getContextClassLoader() == loader)
+                .collect(Collectors.toList());
+    }
+
+    protected static void close(URLClassLoader loader) {
+        try {
+            loader.close();
+        } catch (Exception ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    protected void invokeMain(ClassLoader loader, String mainClass, List<String> args) {
+        try {
+            Class<?> cls = Class.forName(mainClass, true, loader);
+            MethodHandle main = MethodHandles.publicLookup()
+                    .findStatic(cls, "main", MethodType.methodType(void.class, String[].class));
+            main.invoke((Object) args.toArray(new String[0]));
+        } catch (Throwable ex) {
+            failure = ex;
+            System.err.print("Exception in thread \"" + Thread.currentThread().getName() + "\" ");
+            ex.printStackTrace();
+        }
+    }
+
+    /** a class-loader searching its URLs before the parent, except for classes of {@link #JDK_PACKAGES} */
+    public static class IsolatedClassLoader extends URLClassLoader {
+        static {
+            registerAsParallelCapable();
+        }
+
+        /** packages of modules in the boot layer defined by the boot or platform class-loader */
+        public static final Set<String> JDK_PACKAGES = ModuleLayer.boot().modules().stream()
+                .filter(m -> m.getClassLoader() == null || m.getClassLoader() == ClassLoader.getPlatformClassLoader())
+                .flatMap(m -> m.getPackages().stream())
+                .collect(Collectors.toUnmodifiableSet());
+
+        public IsolatedClassLoader(URL[] urls, ClassLoader parent) {
+            super("mvn-exec-app", urls, parent);
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            int dot = name.lastIndexOf('.');
+            if (name.startsWith("java.") || (dot > 0 && JDK_PACKAGES.contains(name.substring(0, dot)))) {
+                return super.loadClass(name, resolve);
+            }
+            synchronized (getClassLoadingLock(name)) {
+                Class<?> cls = findLoadedClass(name);
+                if (cls == null) {
+                    try {
+                        cls = findClass(name);
+                    } catch (ClassNotFoundException ex) {
+                        return super.loadClass(name, resolve);
+                    }
+                }
+                if (resolve) {
+                    resolveClass(cls);
+                }
+                return cls;
+            }
+        }
+    }
+}
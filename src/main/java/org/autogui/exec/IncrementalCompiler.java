@@ -0,0 +1,525 @@
+package org.autogui.exec;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.Opcodes;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.jar.JarFile;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Compiles changed sources of a project by {@link JavaCompiler} in the current process, instead of <code>mvn compile</code>.
+ * <ul>
+ *  <li>a unit is a pair of a source root and a classes directory:
+ *       <code>src/main/java</code> to <code>target/classes</code>, and <code>src/test/java</code> to <code>target/test-classes</code>.
+ *      class-files in the directory are read by ASM for their sources (the <code>SourceFile</code> attribute)
+ *      and referenced classes (class names in the constant pool, including descriptors and signatures)</li>
+ *  <li>a source is changed if it has no class-files or it is not older than one of its class-files.
+ *      class-files of deleted sources are deleted. sources of a unit are recorded as <code>target/.mvn-exec-javac-classes.sources</code>
+ *      (or <code>-test-classes</code>) after each compilation, and by {@link #saveSourceLists()} after <code>mvn compile</code>.
+ *      a class-file is regarded as one of a deleted source only if the source is in the record;
+ *      other class-files without their sources, e.g. from <code>target/generated-sources</code> or Kotlin sources,
+ *      fail the compilation without deleting anything, and then the caller uses <code>mvn compile</code></li>
+ *  <li>dependents, classes referencing classes of changed or deleted sources or their sub-types, are also recompiled.
+ *      the test unit also recompiles dependents of recompiled classes of the main unit</li>
+ *  <li>javac runs with <code>--release</code> of the existing class-files, <code>-g</code>,
+ *      <code>-proc:none</code> and <code>-implicit:none</code>, and the classpath of the project</li>
+ *  <li>resources newer than their copies are copied to the classes directory; no filtering is applied</li>
+ *  <li>{@link #getUnsupportedReason(Collection)} returns non-null for projects needing Maven:
+ *      configurations of the compiler or resources in <code>pom.xml</code>, annotation processors in the classpath,
+ *      <code>module-info.java</code>, <code>target/generated-sources</code>, or no existing class-files. then the caller uses <code>mvn compile</code> instead.
+ *      <code>static final</code> constants inlined by javac are not tracked</li>
+ * </ul>
+ * <pre>
+ *     IncrementalCompiler compiler = new IncrementalCompiler(projectDir, classpath, System.err);
+ *     if (compiler.getUnsupportedReason(List.of("src/main/java")) != null || !compiler.compile(true)) {
+ *         //mvn compile
+ *     }
+ * </pre>
+ */
+public class IncrementalCompiler {
+    /** texts in pom.xml which may change results of compilation by Maven */
+    public static List<String> UNSUPPORTED_POM_TEXTS = List.of(
+            "<annotationProcessorPaths>", "<annotationProcessors>", "<compilerArgs>", "<compilerArgument>",
+            "<sourceDirectory>", "<testSourceDirectory>", "<outputDirectory>", "<filtering>true");
+    public static String PROCESSOR_SERVICE = "META-INF/services/javax.annotation.processing.Processor";
+    public static String SOURCE_LIST_HEADER = "mvn-exec-javac-sources 1";
+    /** directories of sources generated by plugins, whose class-files are not tracked */
+    public static List<String> GENERATED_SOURCE_DIRS = List.of("target/generated-sources", "target/generated-test-sources");
+
+    protected File projectDir;
+    protected List<String> classpath;
+    protected PrintStream err;
+    protected List<String> compiledSources = new ArrayList<>();
+    protected List<String> deletedClasses = new ArrayList<>();
+    protected List<String> copiedResources = new ArrayList<>();
+    protected String failureReason;
+
+    /**
+     * @param projectDir the project directory
+     * @param classpath the test-scope classpath of the project, including <code>target/classes</code> and <code>target/test-classes</code>
+     * @param err the destination of diagnostics of javac
+     */
+    public IncrementalCompiler(File projectDir, List<String> classpath, PrintStream err) {
+        this.projectDir = projectDir;
+        this.classpath = classpath;
+        this.err = err;
+    }
+
+    /** @return relative paths of compiled sources by the last {@link #compile(boolean)} */
+    public List<String> getCompiledSources() {
+        return compiledSources;
+    }
+
+    public List<String> getDeletedClasses() {
+        return deletedClasses;
+    }
+
+    public List<String> getCopiedResources() {
+        return copiedResources;
+    }
+
+    /** @return the reason why the last {@link #compile(boolean)} failed, or null */
+    public String getFailureReason() {
+        return failureReason;
+    }
+
+    public Path getProjectPath(String path) {
+        return projectDir.toPath().resolve(path);
+    }
+
+    /**
+     * @param roots changed roots from {@link SourceFingerprint}
+     * @return a reason why Maven is needed, or null
+     */
+    public String getUnsupportedReason(Collection<String> roots) {
+        if (roots.contains("pom.xml")) {
+            return "pom.xml is changed";
+        }
+        if (ToolProvider.getSystemJavaCompiler() == null) {
+            return "no system java compiler";
+        }
+        try {
+            String pom = Files.readString(getProjectPath("pom.xml"), StandardCharsets.UTF_8);
+            for (String text : UNSUPPORTED_POM_TEXTS) {
+                if (pom.contains(text)) {
+                    return "pom.xml has " + text;
+                }
+            }
+        } catch (IOException ex) {
+            return "pom.xml: " + ex;
+        }
+        for (String src : List.of("src/main/java", "src/test/java")) {
+            if (Files.exists(getProjectPath(src).resolve("module-info.java"))) {
+                return "module-info.java in " + src;
+            }
+        }
+        if (!Files.isDirectory(getProjectPath("target/classes"))) {
+            return "no target/classes";
+        }
+        for (String dir : GENERATED_SOURCE_DIRS) {
+            if (Files.isDirectory(getProjectPath(dir))) {
+                return "generated sources in " + dir;
+            }
+        }
+        for (String e : classpath) {
+            if (e.endsWith(".jar") && hasProcessor(Paths.get(e))) {
+                return "annotation processor in " + e;
+            }
+        }
+        return null;
+    }
+
+    public static boolean hasProcessor(Path jar) {
+        try (JarFile f = new JarFile(jar.toFile())) {
+            return f.getEntry(PROCESSOR_SERVICE) != null;
+        } catch (IOException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * compiles the main unit and then the test unit
+     * @param test if true, the test unit is also compiled. it fails if test sources exist without <code>target/test-classes</code>
+     * @return true if succeeded. false if the compiler failed or the unit cannot be compiled incrementally;
+     *    then classes directories may be partially updated and the caller needs to run Maven
+     */
+    public boolean compile(boolean test) {
+        compiledSources.clear();
+        deletedClasses.clear();
+        copiedResources.clear();
+        failureReason = null;
+        try {
+            Set<String> recompiled = compileUnit("src/main/java", "src/main/resources", "target/classes",
+                    Set.of(), List.of("target/test-classes"));
+            if (recompiled == null) {
+                return false;
+            }
+            if (test) {
+                return compileUnit("src/test/java", "src/test/resources", "target/test-classes",
+                        recompiled, List.of()) != null;
+            }
+            return true;
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    /**
+     * @param sourceRoot the source root like <code>src/main/java</code>
+     * @param resourceRoot the resource root like <code>src/main/resources</code>
+     * @param classesDir the output like <code>target/classes</code>
+     * @param changedOutside internal names of recompiled classes of other units which the unit depends on
+     * @param excludedClasspath classpath entries relative to the project, excluded from the classpath of the unit
+     * @return internal names of recompiled or deleted classes, or null if failed
+     */
+    public Set<String> compileUnit(String sourceRoot, String resourceRoot, String classesDir,
+                                   Set<String> changedOutside, List<String> excludedClasspath) throws IOException {
+        Path srcDir = getProjectPath(sourceRoot);
+        Path outDir = getProjectPath(classesDir);
+        Map<String, ClassEntry> classes = readClasses(outDir);
+        Map<String, List<ClassEntry>> bySource = new HashMap<>();
+        classes.values().forEach(c -> bySource.computeIfAbsent(c.source, k -> new ArrayList<>()).add(c));
+
+        Map<String, Long> sources = listSources(srcDir);
+        Set<String> recordedSources = loadSourceList(classesDir);
+
+        Set<String> targetSources = new TreeSet<>();
+        Set<String> changedClasses = new HashSet<>(changedOutside);
+        sources.forEach((src, time) -> {
+            List<ClassEntry> cs = bySource.get(src);
+            if (cs == null || cs.stream().anyMatch(c -> c.time <= time)) {
+                targetSources.add(src);
+                if (cs != null) {
+                    cs.forEach(c -> changedClasses.add(c.name));
+                }
+            }
+        });
+        List<ClassEntry> staleClasses = new ArrayList<>();
+        Set<String> unknownSources = new TreeSet<>();
+        bySource.forEach((src, cs) -> {
+            if (sources.containsKey(src)) {
+                return;
+            }
+            if (recordedSources.contains(src)) {
+                staleClasses.addAll(cs);
+                cs.forEach(c -> changedClasses.add(c.name));
+            } else {
+                unknownSources.add(src);
+            }
+        });
+        if (!unknownSources.isEmpty()) {
+            //e.g. generated sources, other languages, or deleted before the record: deleting them might break the build
+            failureReason = "class-files of sources not in " + sourceRoot + ": " + unknownSources;
+            return null;
+        }
+        addSubtypes(classes.values(), changedClasses);
+        for (ClassEntry c : classes.values()) {
+            if (sources.containsKey(c.source) && !Collections.disjoint(c.references, changedClasses)) {
+                targetSources.add(c.source);
+            }
+        }
+
+        int release = classes.values().stream()
+                .mapToInt(c -> c.majorVersion - 44)
+                .max().orElse(-1);
+        if (!targetSources.isEmpty() && release < 0) {
+            failureReason = "unknown release";
+            return null;
+        }
+
+        for (String src : targetSources) {
+            for (ClassEntry c : bySource.getOrDefault(src, List.of())) {
+                Files.deleteIfExists(c.file);
+                changedClasses.add(c.name);
+            }
+        }
+        for (ClassEntry c : staleClasses) {
+            Files.deleteIfExists(c.file);
+            deletedClasses.add(c.name);
+        }
+
+        if (!targetSources.isEmpty()) {
+            if (!runCompiler(srcDir, outDir, targetSources, release, excludedClasspath)) {
+                failureReason = "javac failed";
+                return null;
+            }
+            targetSources.forEach(src -> compiledSources.add(sourceRoot + "/" + src));
+        }
+        copyResources(resourceRoot, outDir);
+        saveSourceList(classesDir, sources.keySet());
+        return changedClasses;
+    }
+
+    /**
+     * @param srcDir a source root
+     * @return relative paths of <code>.java</code> files under the root and their last-modified times
+     */
+    public static Map<String, Long> listSources(Path srcDir) throws IOException {
+        Map<String, Long> sources = new TreeMap<>();
+        if (Files.isDirectory(srcDir)) {
+            try (Stream<Path> files = Files.walk(srcDir)) {
+                files.filter(p -> Files.isRegularFile(p) && p.toString().endsWith(".java"))
+                        .forEach(p -> sources.put(toRelative(srcDir, p), p.toFile().lastModified()));
+            }
+        }
+        return sources;
+    }
+
+    /**
+     * @param classesDir the output like <code>target/classes</code>
+     * @return <code>target/.mvn-exec-javac-classes.sources</code>
+     */
+    public Path getSourceListFile(String classesDir) {
+        return getProjectPath("target").resolve(".mvn-exec-javac-" + Paths.get(classesDir).getFileName() + ".sources");
+    }
+
+    /**
+     * @param classesDir the output like <code>target/classes</code>
+     * @return recorded sources compiled to the directory, or an empty set if no record
+     */
+    public Set<String> loadSourceList(String classesDir) {
+        Path file = getSourceListFile(classesDir);
+        if (!Files.isRegularFile(file)) {
+            return Set.of();
+        }
+        try {
+            List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+            if (lines.isEmpty() || !lines.getFirst().equals(SOURCE_LIST_HEADER)) {
+                return Set.of();
+            }
+            return new HashSet<>(lines.subList(1, lines.size()));
+        } catch (Exception ex) {
+            return Set.of();
+        }
+    }
+
+    public void saveSourceList(String classesDir, Collection<String> sources) throws IOException {
+        Path file = getSourceListFile(classesDir);
+        Files.createDirectories(file.getParent());
+        Path tmp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            try (BufferedWriter w = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                w.write(SOURCE_LIST_HEADER);
+                w.write('\n');
+                for (String src : sources) {
+                    w.write(src);
+                    w.write('\n');
+                }
+            }
+            try {
+                Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * records current sources of existing classes directories, after they are compiled by Maven
+     */
+    public void saveSourceLists() {
+        try {
+            for (String[] unit : new String[][] {{"src/main/java", "target/classes"}, {"src/test/java", "target/test-classes"}}) {
+                if (Files.isDirectory(getProjectPath(unit[1]))) {
+                    saveSourceList(unit[1], listSources(getProjectPath(unit[0])).keySet());
+                }
+            }
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    /**
+     * adds sub-types of changed classes, transitively, for dependents referencing inherited members via the sub-types
+     * @param classes classes of the unit
+     * @param changedClasses internal names, updated by the method
+     */
+    public static void addSubtypes(Collection<ClassEntry> classes, Set<String> changedClasses) {
+        boolean added = true;
+        while (added) {
+            added = false;
+            for (ClassEntry c : classes) {
+                if (!changedClasses.contains(c.name) && !Collections.disjoint(c.supers, changedClasses)) {
+                    changedClasses.add(c.name);
+                    added = true;
+                }
+            }
+        }
+    }
+
+    public boolean runCompiler(Path srcDir, Path outDir, Collection<String> sources, int release,
+                               List<String> excludedClasspath) {
+        Set<Path> excluded = excludedClasspath.stream()
+                .map(p -> getProjectPath(p).toAbsolutePath().normalize())
+                .collect(Collectors.toSet());
+        List<String> cp = new ArrayList<>();
+        cp.add(outDir.toString());
+        for (String e : classpath) {
+            Path p = Paths.get(e).toAbsolutePath().normalize();
+            if (!excluded.contains(p) && !p.equals(outDir.toAbsolutePath().normalize())) {
+                cp.add(e);
+            }
+        }
+        List<String> args = new ArrayList<>(List.of(
+                "-d", outDir.toString(),
+                "-cp", String.join(File.pathSeparator, cp),
+                "-encoding", getSourceEncoding(),
+                "-g", "-proc:none", "-implicit:none", "-nowarn"));
+        if (release != Runtime.version().feature()) {
+            args.add("--release");
+            args.add(Integer.toString(release));
+        }
+        sources.forEach(src -> args.add(srcDir.resolve(src).toString()));
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        return compiler.run(InputStream.nullInputStream(), err, err, args.toArray(new String[0])) == 0;
+    }
+
+    static Pattern encodingPattern = Pattern.compile("<project\\.build\\.sourceEncoding>\\s*([^<\\s]+)\\s*<");
+
+    /** @return <code>project.build.sourceEncoding</code> of pom.xml, or UTF-8 */
+    public String getSourceEncoding() {
+        try {
+            Matcher m = encodingPattern.matcher(Files.readString(getProjectPath("pom.xml"), StandardCharsets.UTF_8));
+            if (m.find()) {
+                return m.group(1);
+            }
+        } catch (IOException ex) {
+            //default
+        }
+        return "UTF-8";
+    }
+
+    public void copyResources(String resourceRoot, Path outDir) throws IOException {
+        Path resDir = getProjectPath(resourceRoot);
+        if (!Files.isDirectory(resDir)) {
+            return;
+        }
+        try (Stream<Path> files = Files.walk(resDir)) {
+            for (Path p : (Iterable<Path>) files.filter(Files::isRegularFile)::iterator) {
+                Path target = outDir.resolve(resDir.relativize(p).toString());
+                if (!Files.exists(target) || target.toFile().lastModified() < p.toFile().lastModified()) {
+                    Files.createDirectories(target.getParent());
+                    Files.copy(p, target, StandardCopyOption.REPLACE_EXISTING);
+                    copiedResources.add(resourceRoot + "/" + toRelative(resDir, p));
+                }
+            }
+        }
+    }
+
+    static String toRelative(Path root, Path p) {
+        return root.relativize(p).toString().replace(File.separatorChar, '/');
+    }
+
+    /** a class-file in a classes directory */
+    public static class ClassEntry {
+        public Path file;
+        /** the internal name */
+        public String name;
+        /** the path of the source relative to the source root, like <code>my/pack/MyClass.java</code> */
+        public String source;
+        public long time;
+        public int majorVersion;
+        /** internal names found in the constant pool */
+        public Set<String> references;
+        /** internal names of the super-class and interfaces */
+        public List<String> supers;
+    }
+
+    public static Map<String, ClassEntry> readClasses(Path classesDir) throws IOException {
+        Map<String, ClassEntry> classes = new HashMap<>();
+        if (!Files.isDirectory(classesDir)) {
+            return classes;
+        }
+        try (Stream<Path> files = Files.walk(classesDir)) {
+            for (Path p : (Iterable<Path>) files.filter(p -> p.toString().endsWith(".class") && Files.isRegularFile(p))::iterator) {
+                ClassEntry c = readClass(p);
+                if (c != null) {
+                    classes.put(c.name, c);
+                }
+            }
+        }
+        return classes;
+    }
+
+    /**
+     * @param file a class-file
+     * @return the entry, or null if the class-file has no <code>SourceFile</code> attribute
+     */
+    public static ClassEntry readClass(Path file) throws IOException {
+        byte[] data = Files.readAllBytes(file);
+        ClassEntry c = new ClassEntry();
+        c.file = file;
+        c.time = file.toFile().lastModified();
+        ClassReader r = new ClassReader(data);
+        c.name = r.getClassName();
+        c.supers = new ArrayList<>(List.of(r.getInterfaces()));
+        if (r.getSuperName() != null) {
+            c.supers.add(r.getSuperName());
+        }
+        String[] sourceFile = new String[1];
+        r.accept(new ClassVisitor(Opcodes.ASM9) {
+            @Override
+            public void visitSource(String source, String debug) {
+                sourceFile[0] = source;
+            }
+        }, ClassReader.SKIP_CODE | ClassReader.SKIP_FRAMES);
+        if (sourceFile[0] == null) {
+            return null;
+        }
+        int pack = c.name.lastIndexOf('/');
+        c.source = (pack < 0 ? "" : c.name.substring(0, pack + 1)) + sourceFile[0];
+        c.majorVersion = ((data[6] & 0xff) << 8) | (data[7] & 0xff);
+        c.references = readReferences(data);
+        c.references.remove(c.name);
+        return c;
+    }
+
+    static Pattern descriptorPattern = Pattern.compile("L([^;<>]+)[;<]");
+
+    /**
+     * @param data a class-file
+     * @return internal names in UTF-8 constants, as class names or in descriptors and signatures
+     */
+    public static Set<String> readReferences(byte[] data) throws IOException {
+        Set<String> refs = new HashSet<>();
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        in.skipBytes(8);
+        int count = in.readUnsignedShort();
+        for (int i = 1; i < count; ++i) {
+            int tag = in.readUnsignedByte();
+            switch (tag) {
+                case 1 -> { //Utf8
+                    String s = in.readUTF();
+                    refs.add(s);
+                    if (s.indexOf(';') >= 0) {
+                        Matcher m = descriptorPattern.matcher(s);
+                        while (m.find()) {
+                            refs.add(m.group(1));
+                        }
+                    }
+                }
+                case 5, 6 -> { //Long, Double
+                    in.skipBytes(8);
+                    ++i;
+                }
+                case 7, 8, 16, 19, 20 -> in.skipBytes(2); //Class, String, MethodType, Module, Package
+                case 15 -> in.skipBytes(3); //MethodHandle
+                case 3, 4, 9, 10, 11, 12, 17, 18 -> in.skipBytes(4);
+                default -> throw new IOException("unknown constant tag: " + tag);
+            }
+        }
+        return refs;
+    }
+}
@@ -0,0 +1,235 @@
+package org.autogui.exec;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.function.Supplier;
+
+/**
+ * A pool of pre-started JVMs running {@link JvmPoolWorker}, kept by {@link MavenExecDaemon}.
+ * <ul>
+ *  <li>idle JVMs are keyed by the command, the working directory and variables of {@link #KEY_ENVIRONMENT} in the environment of the worker;
+ *      a JVM cannot change its working directory or environment after the start.
+ *      other variables, e.g. <code>PWD</code>, <code>OLDPWD</code>, <code>SHLVL</code> and <code>_</code> changed by each shell,
+ *      are not a part of the key, thus the program sees them as the request which started the JVM</li>
+ *  <li>{@link #take(Supplier)} returns an idle JVM if exists, or starts a new one,
+ *      and starts other JVMs in the background until <code>size</code> idle JVMs are available for the key</li>
+ *  <li>idle JVMs of least-recently used keys beyond <code>maxKeys</code> are destroyed.
+ *      an idle JVM exits by itself when its stdin is closed, e.g. the daemon exits</li>
+ *  <li>idle JVMs are guarded by the lock of the pool, thus concurrent requests of the daemon can take JVMs</li>
+ * </ul>
+ * <pre>
+ *     JvmPool pool = new JvmPool(1, 4);
+ *     Process p = pool.take(() -&gt; ProcessShell.get(JvmPool.getWorkerCommand("java", List.of(), classpath)));
+ *     //write a request to p.getOutputStream()
+ * </pre>
+ */
+public class JvmPool {
+    protected int size;
+    protected int maxKeys;
+    protected LinkedHashMap<String, Deque<Process>> idle = new LinkedHashMap<>(16, 0.75f, true);
+    protected volatile boolean closed;
+
+    /**
+     * @param size the number of idle JVMs for each key
+     * @param maxKeys the number of keys whose idle JVMs are kept
+     */
+    public JvmPool(int size, int maxKeys) {
+        this.size = size;
+        this.maxKeys = maxKeys;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * @param java the java command
+     * @param jvmOptions options for the JVM
+     * @param classpath the classpath of the program
+     * @return the command line starting {@link JvmPoolWorker}
+     */
+    public static List<String> getWorkerCommand(String java, List<String> jvmOptions, List<String> classpath) {
+        List<String> command = new ArrayList<>();
+        command.add(java);
+        command.addAll(jvmOptions);
+        command.add("-cp");
+        command.add(getWorkerClasspath());
+        command.add(JvmPoolWorker.class.getName());
+        command.add(String.join(File.pathSeparator, classpath));
+        return command;
+    }
+
+    /** the classes needed by {@link JvmPoolWorker}, copied when mvn-exec runs from a runtime image */
+    public static List<Class<?>> WORKER_CLASSES = List.of(JvmPoolWorker.class, InProcessLauncher.class, InProcessLauncher.IsolatedClassLoader.class);
+
+    /**
+     * @return the jar or the classes directory of mvn-exec.
+     *   if mvn-exec is linked into a runtime image (<code>jrt:</code>), the classes of the worker are copied to
+     *   a directory in {@link UserDirectory#getDefault()}, named by the path and the time of the image.
+     *   the directories are checked by {@link UserDirectory#prepare(Path)}, and an existing class-file is reused
+     *   only if it has the same contents as the class in the image; otherwise it is replaced by an atomic move
+     */
+    public static String getWorkerClasspath() {
+        try {
+            URI location = JvmPoolWorker.class.getProtectionDomain().getCodeSource().getLocation().toURI();
+            if (location.getScheme().equals("file")) {
+                return new File(location).getPath();
+            }
+            Path modules = Path.of(System.getProperty("java.home"), "lib", "modules");
+            Path dir = UserDirectory.prepare(UserDirectory.getDefault()).resolve("worker-" +
+                    Integer.toHexString(Objects.hash(modules.toString(), Files.getLastModifiedTime(modules).toMillis())));
+            copyWorkerClasses(dir);
+            return dir.toString();
+        } catch (Exception ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    /**
+     * @param dir the destination directory, created or checked by {@link UserDirectory#prepare(Path)}
+     * @throws IOException failure of copying, or the directory is not private to the user
+     */
+    public static void copyWorkerClasses(Path dir) throws IOException {
+        UserDirectory.prepare(dir);
+        for (Class<?> cls : WORKER_CLASSES) {
+            String name = cls.getName().replace('.', '/') + ".class";
+            byte[] data;
+            try (InputStream in = cls.getResourceAsStream("/" + name)) {
+                data = Objects.requireNonNull(in, name).readAllBytes();
+            }
+            Path file = dir.resolve(name);
+            for (Path d = dir; !d.equals(file.getParent()); ) { //package directories
+                d = d.resolve(file.getParent().getName(d.getNameCount()));
+                UserDirectory.prepare(d);
+            }
+            if (!hasContents(file, data)) {
+                Path tmp = Files.createTempFile(file.getParent(), "worker", ".tmp");
+                try {
+                    Files.write(tmp, data);
+                    Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                } finally {
+                    Files.deleteIfExists(tmp);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param file a file in a directory of the user
+     * @param data the expected contents
+     * @return true if the file exists, is private to the user and has the contents
+     */
+    public static boolean hasContents(Path file, byte[] data) {
+        try {
+            if (!Files.isRegularFile(file, LinkOption.NOFOLLOW_LINKS)) {
+                return false;
+            }
+            UserDirectory.check(file);
+            return Arrays.equals(Files.readAllBytes(file), data);
+        } catch (IOException ex) {
+            return false;
+        }
+    }
+
+    /** environment variables affecting a JVM or a program in general, which are a part of the key of idle JVMs */
+    public static List<String> KEY_ENVIRONMENT = List.of(
+            "PATH", "HOME", "USER", "TMPDIR", "TZ",
+            "LANG", "LANGUAGE", "LC_ALL", "LC_CTYPE", "LC_MESSAGES",
+            "JAVA_HOME", "JAVA_TOOL_OPTIONS", "JDK_JAVA_OPTIONS", "_JAVA_OPTIONS", "CLASSPATH",
+            "DISPLAY", "TERM");
+
+    /**
+     * @param builder the command of a worker
+     * @return a digest of the command, the working directory and variables of {@link #KEY_ENVIRONMENT}
+     */
+    public static String getKey(ProcessBuilder builder) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            builder.command().forEach(c -> md.update((c + "\0").getBytes(StandardCharsets.UTF_8)));
+            File dir = builder.directory();
+            md.update(((dir == null ? "" : dir.getAbsolutePath()) + "\0").getBytes(StandardCharsets.UTF_8));
+            Map<String, String> env = builder.environment();
+            KEY_ENVIRONMENT.forEach(k ->
+                    md.update((k + (env.containsKey(k) ? "=" + env.get(k) : "") + "\0").getBytes(StandardCharsets.UTF_8)));
+            return HexFormat.of().formatHex(md.digest());
+        } catch (Exception ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    /**
+     * @param worker a factory of the command of a worker, called for each new JVM
+     * @return a started JVM waiting for a request from its stdin
+     */
+    public Process take(Supplier<ProcessShell<?>> worker) {
+        ProcessShell<?> sh = worker.get();
+        String key = getKey(sh.getBuilder());
+        Process p = poll(key);
+        if (p == null) {
+            p = sh.start();
+        }
+        replenish(key, worker);
+        return p;
+    }
+
+    protected synchronized Process poll(String key) {
+        Deque<Process> ps = idle.get(key);
+        while (ps != null && !ps.isEmpty()) {
+            Process p = ps.pollFirst();
+            if (p.isAlive()) {
+                return p;
+            }
+        }
+        return null;
+    }
+
+    protected void replenish(String key, Supplier<ProcessShell<?>> worker) {
+        Thread thread = new Thread(() -> {
+            while (getIdleCount(key) < size && !closed) {
+                if (!add(key, worker.get().start())) {
+                    break;
+                }
+            }
+        }, "mvn-exec-pool");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    protected synchronized boolean add(String key, Process p) {
+        Deque<Process> ps = idle.computeIfAbsent(key, k -> new ArrayDeque<>());
+        if (closed || ps.size() >= size) {
+            p.destroy();
+            return false;
+        }
+        ps.addLast(p);
+        Iterator<Map.Entry<String, Deque<Process>>> iter = idle.entrySet().iterator();
+        while (idle.size() > maxKeys && iter.hasNext()) {
+            Map.Entry<String, Deque<Process>> e = iter.next();
+            if (!e.getKey().equals(key)) {
+                iter.remove();
+                e.getValue().forEach(Process::destroy);
+            }
+        }
+        return true;
+    }
+
+    public synchronized int getIdleCount(String key) {
+        Deque<Process> ps = idle.get(key);
+        return ps == null ? 0 : (int) ps.stream().filter(Process::isAlive).count();
+    }
+
+    public synchronized void clear() {
+        closed = true;
+        idle.values().forEach(ps -> ps.forEach(Process::destroy));
+        idle.clear();
+    }
+}
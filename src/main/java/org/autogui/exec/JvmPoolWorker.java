@@ -0,0 +1,83 @@
+package org.autogui.exec;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+
+/**
+ * The main-class of an idle JVM of {@link JvmPool}.
+ * <ul>
+ *  <li>it is started with a project classpath, creates an isolated class-loader of the classpath
+ *      and opens all jars of the loader before receiving a request</li>
+ *  <li>the request is read from stdin: system-properties, the main-class and arguments,
+ *      by the format of {@link MavenExecDaemon#writeMap(java.io.DataOutputStream, java.util.Map)} and so on.
+ *      the rest of stdin becomes the stdin of the program</li>
+ *  <li>the main method is invoked on the main thread of the JVM,
+ *      thus the exit code, uncaught exceptions and non-daemon threads behave as a JVM launched for the program</li>
+ *  <li>the class depends only on the JDK and {@link InProcessLauncher}, thus <code>-cp</code> of the mvn-exec jar is enough</li>
+ * </ul>
+ * <pre>
+ *     java -cp mvn-exec.jar org.autogui.exec.JvmPoolWorker &lt;classpath&gt;
+ * </pre>
+ */
+public class JvmPoolWorker {
+    public static void main(String[] args) throws Throwable {
+        List<String> classpath = List.of(args[0].split(File.pathSeparator));
+        ClassLoader loader = InProcessLauncher.createClassLoader(classpath, ClassLoader.getPlatformClassLoader());
+        warmUp(loader);
+
+        DataInputStream in = new DataInputStream(System.in);
+        int props = readInt(in);
+        if (props < 0) {
+            return; //the pool closed stdin without a request
+        }
+        for (int i = 0; i < props; ++i) {
+            String name = readString(in);
+            System.setProperty(name, readString(in));
+        }
+        String mainClass = readString(in);
+        int argc = readInt(in);
+        List<String> mainArgs = new ArrayList<>(argc);
+        for (int i = 0; i < argc; ++i) {
+            mainArgs.add(readString(in));
+        }
+
+        System.setProperty("java.class.path", args[0]);
+        Thread.currentThread().setContextClassLoader(loader);
+        Class<?> cls = Class.forName(mainClass, true, loader);
+        MethodHandle main = MethodHandles.publicLookup()
+                .findStatic(cls, "main", MethodType.methodType(void.class, String[].class));
+        main.invoke((Object) mainArgs.toArray(new String[0]));
+    }
+
+    /** opens jars of the loader, which is the major part of loading the classpath before knowing the main-class */
+    static void warmUp(ClassLoader loader) throws IOException {
+        Enumeration<URL> manifests = loader.getResources("META-INF/MANIFEST.MF");
+        while (manifests.hasMoreElements()) {
+            manifests.nextElement();
+        }
+    }
+
+    /** @return -1 for the end of the stream */
+    static int readInt(DataInputStream in) throws IOException {
+        int b = in.read();
+        if (b < 0) {
+            return -1;
+        }
+        return (b << 24) | (in.readUnsignedByte() << 16) | (in.readUnsignedByte() << 8) | in.readUnsignedByte();
+    }
+
+    static String readString(DataInputStream in) throws IOException {
+        byte[] bs = new byte[in.readInt()];
+        in.readFully(bs);
+        return new String(bs, StandardCharsets.UTF_8);
+    }
+}
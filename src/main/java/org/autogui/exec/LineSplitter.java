@@ -0,0 +1,237 @@
+package org.autogui.exec;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ * Splits a byte stream into lines by scanning raw bytes, as the replacement of {@link BufferedReader#readLine()}.
+ * <ul>
+ *  <li>lines are terminated by <code>\n</code>, <code>\r</code> or <code>\r\n</code>, and the last line may have no terminator,
+ *      the same as {@link BufferedReader#readLine()}</li>
+ *  <li>a line only with ASCII bytes is not decoded by a decoder:
+ *      {@link #splitToStrings(InputStream, LineProcessor)} creates a string by {@link String#String(byte[], int, int, Charset)}
+ *      which copies ASCII bytes without decoding,
+ *      and {@link #split(InputStream, LineProcessor)} passes a view of the bytes</li>
+ *  <li>other lines are decoded with replacing malformed bytes, the same as {@link InputStreamReader}</li>
+ *  <li>{@link #split(InputStream, LineProcessor)} passes a {@link CharSequence} reused for subsequent lines,
+ *      thus the processor must not retain it; it can call {@link CharSequence#toString()} for keeping the line</li>
+ *  <li>the byte-level splitting is applied to charsets of {@link #ASCII_COMPATIBLE_CHARSETS};
+ *      other charsets like UTF-16 are read by {@link BufferedReader}</li>
+ *  <li>a splitter has states of a stream and is not thread-safe. read buffers are borrowed from a {@link StreamTransfer}</li>
+ * </ul>
+ * <pre>
+ *     new LineSplitter(StandardCharsets.UTF_8)
+ *         .split(in, line -&gt; {
+ *             if (line.length() &gt; 0 &amp;&amp; line.charAt(0) == 'E') {
+ *                 errors.add(line.toString());
+ *             }
+ *         });
+ * </pre>
+ */
+public class LineSplitter {
+    /** charsets whose encoded bytes of non-ASCII characters never contain ASCII bytes */
+    public static Set<Charset> ASCII_COMPATIBLE_CHARSETS = Set.of(
+            StandardCharsets.UTF_8, StandardCharsets.US_ASCII, StandardCharsets.ISO_8859_1);
+
+    public interface LineProcessor<L> {
+        void process(L line) throws IOException, InterruptedException;
+    }
+
+    protected Charset charset;
+    protected StreamTransfer transfer;
+    /** bytes of a line continued from the previous read */
+    protected byte[] pending = new byte[256];
+    protected int pendingLength;
+    protected AsciiLine asciiLine = new AsciiLine();
+    protected CharsetDecoder decoder;
+    protected CharBuffer chars;
+
+    public LineSplitter(Charset charset) {
+        this(charset, StreamTransfer.DEFAULT);
+    }
+
+    public LineSplitter(Charset charset, StreamTransfer transfer) {
+        this.charset = charset;
+        this.transfer = transfer;
+    }
+
+    public static boolean isAsciiCompatible(Charset charset) {
+        return ASCII_COMPATIBLE_CHARSETS.contains(charset);
+    }
+
+    /**
+     * @param in the source, not closed
+     * @param lines receives lines as reused views
+     */
+    public void split(InputStream in, LineProcessor<CharSequence> lines) throws IOException, InterruptedException {
+        if (!isAsciiCompatible(charset)) {
+            splitByReader(in, lines::process);
+            return;
+        }
+        splitBytes(in, (bytes, offset, length) -> {
+            if (isAscii(bytes, offset, length)) {
+                asciiLine.set(bytes, offset, length);
+                lines.process(asciiLine);
+            } else {
+                lines.process(decode(bytes, offset, length));
+            }
+        });
+    }
+
+    /**
+     * @param in the source, not closed
+     * @param lines receives lines as strings
+     */
+    public void splitToStrings(InputStream in, LineProcessor<String> lines) throws IOException, InterruptedException {
+        if (!isAsciiCompatible(charset)) {
+            splitByReader(in, lines);
+            return;
+        }
+        splitBytes(in, (bytes, offset, length) ->
+                lines.process(new String(bytes, offset, length, charset)));
+    }
+
+    protected void splitByReader(InputStream in, LineProcessor<String> lines) throws IOException, InterruptedException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, charset));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lines.process(line);
+        }
+    }
+
+    protected interface ByteLineProcessor {
+        void process(byte[] bytes, int offset, int length) throws IOException, InterruptedException;
+    }
+
+    protected void splitBytes(InputStream in, ByteLineProcessor lines) throws IOException, InterruptedException {
+        byte[] buffer = transfer.acquire();
+        try {
+            pendingLength = 0;
+            boolean skipLf = false;
+            int len;
+            while ((len = in.read(buffer)) >= 0) {
+                int start = 0;
+                if (skipLf && len > 0) { //\r\n split by reads
+                    skipLf = false;
+                    if (buffer[0] == '\n') {
+                        start = 1;
+                    }
+                }
+                for (int i = start; i < len; ++i) {
+                    int b = buffer[i] & 0xff;
+                    if (b > '\r' || (b != '\n' && b != '\r')) { //most bytes including non-ASCII are taken by the first comparison
+                        continue;
+                    }
+                    if (pendingLength > 0) {
+                        append(buffer, start, i - start);
+                        lines.process(pending, 0, pendingLength);
+                        pendingLength = 0;
+                    } else {
+                        lines.process(buffer, start, i - start);
+                    }
+                    start = i + 1;
+                    if (b == '\r') {
+                        if (start < len) {
+                            if (buffer[start] == '\n') {
+                                ++start;
+                                ++i;
+                            }
+                        } else {
+                            skipLf = true;
+                        }
+                    }
+                }
+                if (start < len) {
+                    append(buffer, start, len - start);
+                }
+            }
+            if (pendingLength > 0) {
+                lines.process(pending, 0, pendingLength);
+                pendingLength = 0;
+            }
+        } finally {
+            transfer.release(buffer);
+        }
+    }
+
+    public static boolean isAscii(byte[] bytes, int offset, int length) {
+        for (int i = offset, end = offset + length; i < end; ++i) {
+            if (bytes[i] < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    protected void append(byte[] bytes, int offset, int length) {
+        if (pendingLength + length > pending.length) {
+            pending = Arrays.copyOf(pending, Math.max(pending.length * 2, pendingLength + length));
+        }
+        System.arraycopy(bytes, offset, pending, pendingLength, length);
+        pendingLength += length;
+    }
+
+    /** @return the decoded line in the reused buffer */
+    protected CharBuffer decode(byte[] bytes, int offset, int length) {
+        if (decoder == null) {
+            decoder = charset.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        }
+        int capacity = (int) Math.ceil(length * (double) decoder.maxCharsPerByte());
+        if (chars == null || chars.capacity() < capacity) {
+            chars = CharBuffer.allocate(Math.max(capacity, 256));
+        }
+        chars.clear();
+        decoder.reset();
+        decoder.decode(ByteBuffer.wrap(bytes, offset, length), chars, true);
+        decoder.flush(chars);
+        return chars.flip();
+    }
+
+    /** a reused view of ASCII bytes */
+    public static class AsciiLine implements CharSequence {
+        protected byte[] bytes;
+        protected int offset;
+        protected int length;
+
+        public void set(byte[] bytes, int offset, int length) {
+            this.bytes = bytes;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index < 0 || index >= length) {
+                throw new IndexOutOfBoundsException(index);
+            }
+            return (char) bytes[offset + index];
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return toString().substring(start, end);
+        }
+
+        @Override
+        public String toString() {
+            return new String(bytes, offset, length, StandardCharsets.ISO_8859_1);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package org.autogui.exec;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+
+/**
+ * A streaming top-k selector of {@link MavenExecJava.MainClassInfo}s by scores.
+ * <ul>
+ *  <li>candidates are consumed by {@link #accept(MavenExecJava.MainClassInfo)} as a scanner produces them</li>
+ *  <li>it keeps at most <code>limit</code> candidates in a bounded heap; memory does not depend on the number of candidates</li>
+ *  <li>higher scores are selected. for the same score, an earlier candidate is selected, same as a stable sort</li>
+ * </ul>
+ * <pre>
+ *     MainClassSelector top = new MainClassSelector(3);
+ *     mains.forEach(top);
+ *     top.getSelected(); //sorted by descending scores
+ * </pre>
+ */
+public class MainClassSelector implements Consumer<MavenExecJava.MainClassInfo> {
+    protected int limit;
+    protected long count;
+    /** the root is the worst selected candidate */
+    protected PriorityQueue<Candidate> heap;
+
+    public record Candidate(MavenExecJava.MainClassInfo main, long order) {}
+
+    /** the order of better candidates: higher scores first, then earlier ones */
+    public static Comparator<Candidate> BETTER_FIRST = Comparator.<Candidate>comparingInt(c -> c.main().getScore())
+            .reversed()
+            .thenComparingLong(Candidate::order);
+
+    public MainClassSelector(int limit) {
+        this.limit = Math.max(1, limit);
+        heap = new PriorityQueue<>(Math.min(this.limit, 1024) + 1, BETTER_FIRST.reversed());
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * @return the number of consumed candidates
+     */
+    public long getCount() {
+        return count;
+    }
+
+    public boolean isFull() {
+        return heap.size() >= limit;
+    }
+
+    public boolean isEmpty() {
+        return heap.isEmpty();
+    }
+
+    @Override
+    public void accept(MavenExecJava.MainClassInfo main) {
+        Candidate c = new Candidate(main, count);
+        ++count;
+        if (heap.size() < limit) {
+            heap.add(c);
+        } else if (BETTER_FIRST.compare(c, heap.peek()) < 0) {
+            heap.poll();
+            heap.add(c);
+        }
+    }
+
+    /**
+     * @return selected candidates sorted by descending scores
+     */
+    public List<MavenExecJava.MainClassInfo> getSelected() {
+        List<Candidate> cs = new ArrayList<>(heap);
+        cs.sort(BETTER_FIRST);
+        List<MavenExecJava.MainClassInfo> mains = new ArrayList<>(cs.size());
+        cs.forEach(c -> mains.add(c.main()));
+        return mains;
+    }
+
+    /**
+     * @return the best candidate or null
+     */
+    public MavenExecJava.MainClassInfo getFirst() {
+        List<MavenExecJava.MainClassInfo> mains = getSelected();
+        return mains.isEmpty() ? null : mains.getFirst();
+    }
+}
@@ -6,9 +6,12 @@ import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -17,13 +20,16 @@ import java.util.regex.Pattern;
 
 public class MainFinder extends ClassVisitor {
     protected Pattern namePattern;
+    protected NameMatcher nameMatcher;
     protected String className;
     protected boolean hasMain;
     protected boolean nameMatched;
     protected int nameMatchedScore;
+    protected boolean constantPoolFilter = true;
+    protected boolean constantPoolRejected;
 
     public MainFinder(String name) {
-        this(getPatternFromString(name));
+        this(new NameMatcher(name));
     }
 
     public MainFinder(Pattern namePattern) {
@@ -31,8 +37,30 @@ public class MainFinder extends ClassVisitor {
         this.namePattern = namePattern;
     }
 
+    public MainFinder(NameMatcher nameMatcher) {
+        super(Opcodes.ASM9);
+        this.nameMatcher = nameMatcher;
+    }
+
     public String matchClass(Path classFile) throws IOException {
-        ClassReader r = new ClassReader(Files.newInputStream(classFile));
+        try (InputStream in = Files.newInputStream(classFile)) {
+            return matchClass(in.readAllBytes());
+        }
+    }
+
+    /**
+     * @param classData the content of a class-file
+     * @return the class name if the class has the main method and the name matches the pattern, or null.
+     *     If {@link #isConstantPoolFilter()}, the method first checks the constant-pool
+     *      by {@link #hasMainCandidate(byte[])} and skips parsing the class if it fails.
+     */
+    public String matchClass(byte[] classData) {
+        constantPoolRejected = false;
+        if (constantPoolFilter && !hasMainCandidate(classData)) {
+            constantPoolRejected = true;
+            return null;
+        }
+        ClassReader r = new ClassReader(classData);
         r.accept(this, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
         if (this.hasMain() && this.isNameMatched()) {
             return this.getClassName();
@@ -40,6 +68,93 @@ public class MainFinder extends ClassVisitor {
         return null;
     }
 
+    public MainFinder setConstantPoolFilter(boolean constantPoolFilter) {
+        this.constantPoolFilter = constantPoolFilter;
+        return this;
+    }
+
+    public boolean isConstantPoolFilter() {
+        return constantPoolFilter;
+    }
+
+    /**
+     * @return true if the last {@link #matchClass(byte[])} skipped parsing by the constant-pool check
+     */
+    public boolean isConstantPoolRejected() {
+        return constantPoolRejected;
+    }
+
+    static final byte[] MAIN_NAME = {'m', 'a', 'i', 'n'};
+    static final byte[] MAIN_DESCRIPTOR = "([Ljava/lang/String;)V".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * scans the constant-pool of the class-file without constructing any visitors.
+     * @param classData the content of a class-file
+     * @return false if the constant-pool does not have both UTF8 entries "main" and "([Ljava/lang/String;)V",
+     *          which are required for declaring the main method.
+     *         true if the class might have the main method, or the data cannot be scanned
+     */
+    public static boolean hasMainCandidate(byte[] classData) {
+        try {
+            if (classData.length < 10 || readU2(classData, 0) != 0xCAFE || readU2(classData, 2) != 0xBABE) {
+                return true;
+            }
+            int count = readU2(classData, 8);
+            int pos = 10;
+            boolean name = false;
+            boolean descriptor = false;
+            for (int i = 1; i < count; ++i) {
+                int tag = classData[pos];
+                switch (tag) {
+                    case 1: { //Utf8
+                        int len = readU2(classData, pos + 1);
+                        name |= equalsBytes(classData, pos + 3, len, MAIN_NAME);
+                        descriptor |= equalsBytes(classData, pos + 3, len, MAIN_DESCRIPTOR);
+                        if (name && descriptor) {
+                            return true;
+                        }
+                        pos += 3 + len;
+                        break;
+                    }
+                    case 7: case 8: case 16: case 19: case 20: //Class, String, MethodType, Module, Package
+                        pos += 3;
+                        break;
+                    case 15: //MethodHandle
+                        pos += 4;
+                        break;
+                    case 3: case 4: case 9: case 10: case 11: case 12: case 17: case 18: //Integer, Float, refs, NameAndType, Dynamic, InvokeDynamic
+                        pos += 5;
+                        break;
+                    case 5: case 6: //Long, Double: 2 entries
+                        pos += 9;
+                        ++i;
+                        break;
+                    default: //unknown
+                        return true;
+                }
+            }
+            return false;
+        } catch (IndexOutOfBoundsException ex) {
+            return true;
+        }
+    }
+
+    private static int readU2(byte[] data, int pos) {
+        return ((data[pos] & 0xFF) << 8) | (data[pos + 1] & 0xFF);
+    }
+
+    private static boolean equalsBytes(byte[] data, int pos, int len, byte[] expected) {
+        if (len != expected.length) {
+            return false;
+        }
+        for (int i = 0; i < len; ++i) {
+            if (data[pos + i] != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     public boolean hasMain() {
         return hasMain;
     }
@@ -59,7 +174,11 @@ public class MainFinder extends ClassVisitor {
     @Override
     public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
         className = name.replace('/', '.');
-        if (this.namePattern != null) {
+        if (this.nameMatcher != null) {
+            nameMatchedScore = nameMatcher.match(name.replace('$', '.')
+                    .replace('/', '.'));
+            nameMatched = nameMatchedScore > 0;
+        } else if (this.namePattern != null) {
             name = name.replace('$', '.')
                         .replace('/', '.');
 
@@ -143,6 +262,179 @@ public class MainFinder extends ClassVisitor {
         }
     }
 
+    /**
+     * the same scoring as {@link #match(String, Pattern)} from start positions of matched groups,
+     *  without allocating any objects
+     * @param name the tested string, no "$" or "/".
+     * @param groupStarts start positions of groups in the name
+     * @param groupCount the number of groups in groupStarts
+     * @return the score, at least 1
+     */
+    public static int scoreGroups(String name, int[] groupStarts, int groupCount) {
+        int score = 0;
+        int prevStart = Integer.MIN_VALUE;
+        for (int i = 0; i < groupCount; ++i) {
+            int pos = groupStarts[i];
+            if (isUpperCaseAt(name, pos)) {
+                score += 4;
+            } else if (prevStart + 1 == pos) {
+                score += 2;
+            } else {
+                score += 1;
+            }
+            prevStart = pos;
+        }
+        score += scoreGroupCoverage(name, groupStarts, groupCount);
+        return Math.max(1, score);
+    }
+
+    /**
+     * @param name the tested string
+     * @param pos a position in the name
+     * @return true if {@link #subSequenceIfUpperCase(String, int)} returns a non-empty string, without allocating any objects
+     */
+    public static boolean isUpperCaseAt(String name, int pos) {
+        return pos < name.length() && Character.isUpperCase(name.charAt(pos));
+    }
+
+    public static int scoreGroupCoverage(String name, int[] groupStarts, int groupCount) {
+        return scoreGroupCoverage(name, groupStarts, groupCount, getScoreBuffer());
+    }
+
+    /**
+     * the same as {@link #scoreGroupCoverage(String, Matcher)} from start positions of matched groups.
+     *  Note that the last group is excluded as the original method.
+     *  It uses arrays of the buffer instead of allocating collections.
+     * @param name the tested string, no "$" or "/".
+     * @param groupStarts start positions of groups in the name
+     * @param groupCount the number of groups in groupStarts
+     * @param buffer a reused buffer of the current thread
+     * @return the coverage score
+     */
+    public static int scoreGroupCoverage(String name, int[] groupStarts, int groupCount, ScoreBuffer buffer) {
+        int lastDotNext = name.lastIndexOf('.') + 1;
+        int len = name.length();
+        int totalGroups = 0;
+        int[] wordOfGroup = buffer.getWordOfGroup(groupCount);
+        int pos = lastDotNext;
+        while (pos < len) { //finds words of [A-Z][a-z]*|[0-9]+
+            char c = name.charAt(pos);
+            int end;
+            if (c >= 'A' && c <= 'Z') {
+                end = pos + 1;
+                while (end < len && name.charAt(end) >= 'a' && name.charAt(end) <= 'z') {
+                    ++end;
+                }
+            } else if (c >= '0' && c <= '9') {
+                end = pos + 1;
+                while (end < len && name.charAt(end) >= '0' && name.charAt(end) <= '9') {
+                    ++end;
+                }
+            } else {
+                ++pos;
+                continue;
+            }
+            for (int i = 1; i < groupCount; ++i) {
+                int gs = groupStarts[i - 1];
+                if (pos <= gs && gs < end && wordOfGroup[i - 1] == -1) {
+                    wordOfGroup[i - 1] = totalGroups;
+                }
+            }
+            ++totalGroups;
+            pos = end;
+        }
+        //the number of distinct word indices including -1 (a group out of words)
+        int[] marks = buffer.getMarks(totalGroups + 1);
+        int stamp = buffer.nextStamp();
+        int matchedGroups = 0;
+        for (int i = 1; i < groupCount; ++i) {
+            int w = wordOfGroup[i - 1] + 1;
+            if (marks[w] != stamp) {
+                marks[w] = stamp;
+                ++matchedGroups;
+            }
+        }
+        return (int) (((double) matchedGroups / (double) totalGroups) * 4.0);
+    }
+
+    static ThreadLocal<ScoreBuffer> scoreBuffers = ThreadLocal.withInitial(ScoreBuffer::new);
+
+    /**
+     * @return the buffer of the current thread for scoring and {@link NameMatcher}
+     */
+    public static ScoreBuffer getScoreBuffer() {
+        return scoreBuffers.get();
+    }
+
+    /**
+     * reusable arrays for scoring; an instance must be used by a single thread.
+     *  The arrays grow and are never shrunk.
+     */
+    public static class ScoreBuffer {
+        protected int[] wordOfGroup = new int[16];
+        protected int[] marks = new int[16];
+        protected int stamp;
+        protected int[] nextDot = new int[128];
+        protected int[] firstOk = new int[1024];
+        protected int[] groups = new int[16];
+
+        /**
+         * @param size required length
+         * @return an array filled with -1 up to the size
+         */
+        public int[] getWordOfGroup(int size) {
+            if (wordOfGroup.length < size) {
+                wordOfGroup = new int[Math.max(size, wordOfGroup.length * 2)];
+            }
+            Arrays.fill(wordOfGroup, 0, size, -1);
+            return wordOfGroup;
+        }
+
+        /**
+         * @param size required length
+         * @return an array whose elements are marked by {@link #nextStamp()}
+         */
+        public int[] getMarks(int size) {
+            if (marks.length < size) {
+                marks = new int[Math.max(size, marks.length * 2)];
+            }
+            return marks;
+        }
+
+        /**
+         * @return a new stamp value which is not contained in the marks array
+         */
+        public int nextStamp() {
+            ++stamp;
+            if (stamp == Integer.MAX_VALUE) {
+                Arrays.fill(marks, 0);
+                stamp = 1;
+            }
+            return stamp;
+        }
+
+        public int[] getNextDot(int size) {
+            if (nextDot.length < size) {
+                nextDot = new int[Math.max(size, nextDot.length * 2)];
+            }
+            return nextDot;
+        }
+
+        public int[] getFirstOk(int size) {
+            if (firstOk.length < size) {
+                firstOk = new int[Math.max(size, firstOk.length * 2)];
+            }
+            return firstOk;
+        }
+
+        public int[] getGroups(int size) {
+            if (groups.length < size) {
+                groups = new int[Math.max(size, groups.length * 2)];
+            }
+            return groups;
+        }
+    }
+
     static Pattern wordPattern = Pattern.compile("([A-Z][a-z]*)|([0-9]+)");
 
     /**
@@ -188,6 +480,41 @@ public class MainFinder extends ClassVisitor {
 
 
 
+    /**
+     * @param relativePath a relative path of a class-file from a classes directory, separated by "/", like <code>"a/b/C$D.class"</code>
+     * @return the binary class name derived from the path, like <code>"a.b.C$D"</code>
+     */
+    public static String getClassNameFromPath(String relativePath) {
+        String name = relativePath;
+        if (name.endsWith(".class")) {
+            name = name.substring(0, name.length() - ".class".length());
+        }
+        return name.replace('/', '.');
+    }
+
+    /**
+     * @param className a binary class name like <code>"a.b.C$D"</code>
+     * @param pattern the matching pattern, or null
+     * @return true if the pattern is null or the name matches the pattern as {@link #visit(int, int, String, String, String, String[])};
+     *     it can be used for skipping class-files before reading them
+     */
+    public static boolean matchClassName(String className, Pattern pattern) {
+        return pattern == null || match(className.replace('$', '.'), pattern) > 0;
+    }
+
+    /**
+     * @param className a binary class name like <code>"a.b.C$D"</code>
+     * @param matcher the matcher, or null
+     * @return true if the matcher is null or the name matches the matcher
+     */
+    public static boolean matchClassName(String className, NameMatcher matcher) {
+        return matcher == null || matcher.matches(className.replace('$', '.'));
+    }
+
+    public NameMatcher getNameMatcher() {
+        return nameMatcher;
+    }
+
     public Pattern getNamePattern() {
         return namePattern;
     }
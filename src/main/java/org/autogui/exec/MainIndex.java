@@ -0,0 +1,418 @@
+package org.autogui.exec;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/**
+ * A persistent index of class-files under a classes directory like <code>target/classes</code>.
+ * <ul>
+ *  <li>each entry records the class name, the relative path, the size, the last-modified time and whether the class has a main method</li>
+ *  <li>the index is saved as <code>target/.mvn-exec-index/classes.idx</code> for <code>target/classes</code></li>
+ *  <li>{@link #update()} revalidates entries by the last-modified times of directories and by stats of files;
+ *      only added or modified class-files are parsed by {@link MainFinder} in parallel with a {@link ClassScanner}</li>
+ *  <li>{@link #update(Predicate)} can take a filter for class names derived from relative paths;
+ *      files of unmatched names are recorded without parsing and parsed by a later update with another filter</li>
+ *  <li>{@link #save()} writes a temporary file and atomically replaces the index file,
+ *      thus concurrent invocations can read the index while another one writes it</li>
+ *  <li>{@link #read()}, {@link #update(Predicate)}, {@link #save()} and {@link #getMainEntries()} are synchronized on the index,
+ *      thus requests of {@link MavenExecDaemon} can share an index</li>
+ * </ul>
+ * <pre>
+ *     MainIndex index = MainIndex.load(classesDir);
+ *     index.update();
+ *     index.save();
+ *     index.getMainEntries().forEach(...);
+ * </pre>
+ */
+public class MainIndex {
+    public static String INDEX_DIR_NAME = ".mvn-exec-index";
+    public static String INDEX_HEADER = "mvn-exec-index 1";
+
+    protected Path classesDir;
+    protected Path indexFile;
+    protected Map<String, Long> directories = new TreeMap<>();
+    protected Map<String, Entry> entries = new TreeMap<>();
+    protected boolean modified;
+    protected int parsedCount;
+    protected ClassScanner scanner;
+
+    public MainIndex(Path classesDir, Path indexFile, ClassScanner scanner) {
+        this.classesDir = classesDir;
+        this.indexFile = indexFile;
+        this.scanner = scanner;
+    }
+
+    public static MainIndex load(Path classesDir) {
+        return load(classesDir, new ClassScanner());
+    }
+
+    public static MainIndex load(Path classesDir, ClassScanner scanner) {
+        MainIndex index = new MainIndex(classesDir, getIndexFile(classesDir), scanner);
+        index.read();
+        return index;
+    }
+
+    /**
+     * @param classesDir a classes directory like <code>target/classes</code>
+     * @return <code>target/.mvn-exec-index/classes.idx</code>
+     */
+    public static Path getIndexFile(Path classesDir) {
+        Path abs = classesDir.toAbsolutePath().normalize();
+        Path parent = abs.getParent();
+        return (parent == null ? abs : parent).resolve(INDEX_DIR_NAME)
+                .resolve(abs.getFileName() + ".idx");
+    }
+
+    public Path getClassesDir() {
+        return classesDir;
+    }
+
+    public Path getIndexFile() {
+        return indexFile;
+    }
+
+    public Collection<Entry> getEntries() {
+        return entries.values();
+    }
+
+    public synchronized List<Entry> getMainEntries() {
+        List<Entry> mains = new ArrayList<>();
+        for (Entry e : entries.values()) {
+            if (e.isHasMain()) {
+                mains.add(e);
+            }
+        }
+        return mains;
+    }
+
+    public boolean isModified() {
+        return modified;
+    }
+
+    /**
+     * @return the number of class-files parsed by the last {@link #update()}
+     */
+    public int getParsedCount() {
+        return parsedCount;
+    }
+
+    public static class Entry {
+        protected String path;
+        protected String name;
+        protected long size;
+        protected long lastModified;
+        protected boolean hasMain;
+        protected boolean parsed;
+
+        public Entry(String path, String name, long size, long lastModified, boolean hasMain) {
+            this(path, name, size, lastModified, hasMain, true);
+        }
+
+        public Entry(String path, String name, long size, long lastModified, boolean hasMain, boolean parsed) {
+            this.path = path;
+            this.name = name;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.hasMain = hasMain;
+            this.parsed = parsed;
+        }
+
+        /**
+         * @return the relative path from the classes directory, separated by "/"
+         */
+        public String getPath() {
+            return path;
+        }
+
+        /**
+         * @return the binary name of the class separated by ".", or empty if the class has no main method
+         */
+        public String getName() {
+            return name;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        public boolean isHasMain() {
+            return hasMain;
+        }
+
+        /**
+         * @return false if the file is skipped by the name filter and {@link #isHasMain()} is unknown
+         */
+        public boolean isParsed() {
+            return parsed;
+        }
+
+        public boolean isSame(BasicFileAttributes attrs) {
+            return size == attrs.size() && lastModified == toTime(attrs);
+        }
+
+        @Override
+        public String toString() {
+            return "Entry{" +
+                    "path='" + path + '\'' +
+                    ", name='" + name + '\'' +
+                    ", size=" + size +
+                    ", lastModified=" + lastModified +
+                    ", hasMain=" + hasMain +
+                    ", parsed=" + parsed +
+                    '}';
+        }
+    }
+
+    public static long toTime(BasicFileAttributes attrs) {
+        return attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+    }
+
+    ///////////////////
+
+    /**
+     * reads the index file. an unreadable or broken index file is ignored and causes an empty index
+     */
+    public synchronized void read() {
+        directories.clear();
+        entries.clear();
+        if (!Files.isRegularFile(indexFile)) {
+            return;
+        }
+        try {
+            List<String> lines = Files.readAllLines(indexFile, StandardCharsets.UTF_8);
+            if (lines.isEmpty() || !lines.getFirst().equals(INDEX_HEADER)) {
+                return;
+            }
+            for (String line : lines.subList(1, lines.size())) {
+                String[] cols = line.split("\t", -1);
+                if (cols.length == 3 && cols[0].equals("D")) {
+                    directories.put(cols[1], Long.parseLong(cols[2]));
+                } else if (cols.length == 6 && cols[0].equals("F")) {
+                    entries.put(cols[1], new Entry(cols[1], cols[5],
+                            Long.parseLong(cols[2]), Long.parseLong(cols[3]), cols[4].equals("1"), !cols[4].equals("?")));
+                } else {
+                    throw new IOException("invalid line: " + line);
+                }
+            }
+        } catch (Exception ex) {
+            directories.clear();
+            entries.clear();
+        }
+    }
+
+    /**
+     * writes the index to a temporary file and replaces the index file by an atomic move
+     * @throws IOException failure of writing
+     */
+    public synchronized void save() throws IOException {
+        Path dir = indexFile.getParent();
+        Files.createDirectories(dir);
+        Path tmp = Files.createTempFile(dir, indexFile.getFileName().toString(), ".tmp");
+        try {
+            try (BufferedWriter w = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                w.write(INDEX_HEADER);
+                w.write('\n');
+                for (Map.Entry<String, Long> d : directories.entrySet()) {
+                    w.write("D\t" + d.getKey() + "\t" + d.getValue() + "\n");
+                }
+                for (Entry e : entries.values()) {
+                    w.write("F\t" + e.getPath() + "\t" + e.getSize() + "\t" + e.getLastModified() + "\t" +
+                            (!e.isParsed() ? "?" : e.isHasMain() ? "1" : "0") + "\t" + e.getName() + "\n");
+                }
+            }
+            try {
+                Files.move(tmp, indexFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(tmp, indexFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+            modified = false;
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * saves the index only if it is modified; a failure of writing is ignored because the index is just a cache
+     * @return true if saved
+     */
+    public synchronized boolean saveIfModified() {
+        if (modified) {
+            try {
+                save();
+                return true;
+            } catch (IOException ex) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    ///////////////////
+
+    /**
+     * revalidates the index with parsing all class-files
+     * @return true if some entries are changed
+     * @throws IOException failure of walking
+     */
+    public boolean update() throws IOException {
+        return update(name -> true);
+    }
+
+    /**
+     * revalidates the index.
+     *  If all recorded directories have the same last-modified times, then the set of class-files is unchanged and
+     *   it just checks stats of recorded files.
+     *  Otherwise, it walks the entire classes directory and reuses entries of unchanged files.
+     * @param nameFilter a filter for binary class names derived from relative paths by {@link MainFinder#getClassNameFromPath(String)}.
+     *                    only files of matched names are parsed.
+     * @return true if some entries are changed
+     * @throws IOException failure of walking
+     */
+    public synchronized boolean update(Predicate<String> nameFilter) throws IOException {
+        parsedCount = 0;
+        boolean changed;
+        if (isDirectoriesUnchanged()) {
+            changed = updateFiles(nameFilter);
+        } else {
+            changed = updateWalk(nameFilter);
+        }
+        modified |= changed;
+        return changed;
+    }
+
+    protected boolean isDirectoriesUnchanged() {
+        if (directories.isEmpty()) {
+            return false;
+        }
+        for (Map.Entry<String, Long> d : directories.entrySet()) {
+            BasicFileAttributes attrs = readAttributes(resolve(d.getKey()));
+            if (attrs == null || !attrs.isDirectory() || toTime(attrs) != d.getValue()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    protected boolean updateFiles(Predicate<String> nameFilter) {
+        boolean changed = false;
+        List<Path> parsed = new ArrayList<>();
+        List<BasicFileAttributes> parsedAttrs = new ArrayList<>();
+        for (Map.Entry<String, Entry> fe : entries.entrySet()) {
+            Entry e = fe.getValue();
+            Path file = resolve(e.getPath());
+            BasicFileAttributes attrs = readAttributes(file);
+            if (attrs == null || !attrs.isRegularFile()) {
+                fe.setValue(null);
+                changed = true;
+            } else if (e.isSame(attrs) && e.isParsed()) {
+                //unchanged
+            } else if (nameFilter.test(MainFinder.getClassNameFromPath(e.getPath()))) {
+                parsed.add(file);
+                parsedAttrs.add(attrs);
+            } else if (!e.isSame(attrs)) {
+                fe.setValue(unparsed(e.getPath(), attrs));
+                changed = true;
+            }
+        }
+        entries.values().removeIf(Objects::isNull);
+        parse(parsed, parsedAttrs).forEach(e -> entries.put(e.getPath(), e));
+        return changed || !parsed.isEmpty();
+    }
+
+    protected boolean updateWalk(Predicate<String> nameFilter) throws IOException {
+        Map<String, Long> newDirs = new TreeMap<>();
+        Map<String, Entry> newEntries = new TreeMap<>();
+        List<Path> parsed = new ArrayList<>();
+        List<BasicFileAttributes> parsedAttrs = new ArrayList<>();
+        if (Files.isDirectory(classesDir)) {
+            Files.walkFileTree(classesDir, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                    newDirs.put(relative(dir), toTime(attrs));
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    if (attrs.isRegularFile() && file.getFileName().toString().endsWith(".class")) {
+                        String rel = relative(file);
+                        Entry e = entries.get(rel);
+                        boolean same = e != null && e.isSame(attrs);
+                        if (same && e.isParsed()) {
+                            newEntries.put(rel, e);
+                        } else if (nameFilter.test(MainFinder.getClassNameFromPath(rel))) {
+                            parsed.add(file);
+                            parsedAttrs.add(attrs);
+                        } else {
+                            newEntries.put(rel, same ? e : unparsed(rel, attrs));
+                        }
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        }
+        parse(parsed, parsedAttrs).forEach(e -> newEntries.put(e.getPath(), e));
+        boolean changed = !newDirs.equals(directories) || !newEntries.equals(entries) ||
+                !parsed.isEmpty();
+        directories = newDirs;
+        entries = newEntries;
+        return changed;
+    }
+
+    /**
+     * parses files in parallel
+     * @param files parsed class-files
+     * @param attrs attributes of each file
+     * @return entries for each file
+     */
+    protected List<Entry> parse(List<Path> files, List<BasicFileAttributes> attrs) {
+        parsedCount += files.size();
+        List<String> names = scanner.map(files, this::parseName);
+        List<Entry> parsed = new ArrayList<>(files.size());
+        for (int i = 0, l = files.size(); i < l; ++i) {
+            String name = names.get(i);
+            BasicFileAttributes a = attrs.get(i);
+            parsed.add(new Entry(relative(files.get(i)), name == null ? "" : name, a.size(), toTime(a), name != null));
+        }
+        return parsed;
+    }
+
+    protected Entry unparsed(String rel, BasicFileAttributes attrs) {
+        return new Entry(rel, "", attrs.size(), toTime(attrs), false, false);
+    }
+
+    protected String parseName(Path file) {
+        try {
+            return scanner.matchClass(file, new MainFinder((Pattern) null));
+        } catch (Exception ex) { //broken class-file
+            return null;
+        }
+    }
+
+    protected Path resolve(String rel) {
+        return rel.isEmpty() ? classesDir : classesDir.resolve(rel);
+    }
+
+    protected String relative(Path p) {
+        return classesDir.relativize(p).toString().replace(p.getFileSystem().getSeparator(), "/");
+    }
+
+    protected BasicFileAttributes readAttributes(Path p) {
+        try {
+            return Files.readAttributes(p, BasicFileAttributes.class);
+        } catch (IOException ex) {
+            return null;
+        }
+    }
+}
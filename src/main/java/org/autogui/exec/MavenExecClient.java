@@ -0,0 +1,189 @@
+package org.autogui.exec;
+
+import java.io.*;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A thin client of {@link MavenExecDaemon}.
+ * <ul>
+ *  <li>it sends the current directory, the environment and arguments to the daemon,
+ *      and copies outputs from the daemon to stdout and stderr</li>
+ *  <li>if the daemon requests to launch a command, the client starts it with inheriting the console
+ *       and exits with the exit code of the command</li>
+ *  <li>if the daemon runs the program by itself, the client sends its stdin to the daemon</li>
+ *  <li>if no daemon is running at the socket, it runs {@link MavenExecJava} in the same process.
+ *      it also does so without connecting if the socket or its directory is not private to the user ({@link #checkSocket(Path)})</li>
+ *  <li>a failure after connecting is reported with the exit code 1 instead of running in the same process,
+ *      because the daemon might have already run the program</li>
+ * </ul>
+ * <pre>
+ *     java -cp ... org.autogui.exec.MavenExecClient [--socket &lt;path&gt;] &lt;args of MavenExecJava&gt;...
+ * </pre>
+ */
+public class MavenExecClient {
+    protected PrintStream out = System.out;
+    protected PrintStream err = System.err;
+    protected InputStream in = System.in;
+
+    public static void main(String[] args) {
+        Path socketPath = MavenExecDaemon.getDefaultSocketPath();
+        if (args.length >= 2 && args[0].equals("--socket")) {
+            socketPath = Paths.get(args[1]);
+        }
+        if (!checkSocket(socketPath)) {
+            MavenExecJava.main(args);
+            return;
+        }
+        SocketChannel ch = connect(socketPath);
+        if (ch == null) {
+            MavenExecJava.main(args);
+            return;
+        }
+        int code;
+        try (ch) {
+            code = new MavenExecClient().request(ch, args);
+        } catch (IOException ex) {
+            //the request might have been already processed by the daemon: running it again here could run the program twice
+            System.err.println("mvn-exec: the request to the daemon failed: " + ex);
+            code = 1;
+        }
+        System.exit(code);
+    }
+
+    /**
+     * @param socketPath the socket file
+     * @return a connected channel, or null if no daemon accepts the connection
+     */
+    public static SocketChannel connect(Path socketPath) {
+        SocketChannel ch = null;
+        try {
+            ch = SocketChannel.open(StandardProtocolFamily.UNIX);
+            ch.connect(UnixDomainSocketAddress.of(socketPath));
+            return ch;
+        } catch (IOException ex) {
+            try {
+                if (ch != null) {
+                    ch.close();
+                }
+            } catch (IOException ex2) {
+                //ignore
+            }
+            return null;
+        }
+    }
+
+    /**
+     * a socket created by another user could receive the environment and send commands launched by the client
+     * @param socketPath the socket file
+     * @return true if the socket and its directory exist and are only accessible by the user.
+     *   a warning is printed if they exist but are not
+     */
+    public static boolean checkSocket(Path socketPath) {
+        if (!Files.exists(socketPath, LinkOption.NOFOLLOW_LINKS)) {
+            return false;
+        }
+        try {
+            UserDirectory.check(socketPath.toAbsolutePath().getParent());
+            UserDirectory.check(socketPath);
+            return true;
+        } catch (IOException ex) {
+            System.err.println("mvn-exec: ignoring the daemon socket: " + ex.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * @param ch a connected channel
+     * @param args arguments of {@link MavenExecJava}
+     * @return the exit code of a launched command, or of the request
+     * @throws IOException failure of communication
+     */
+    public int request(SocketChannel ch, String... args) throws IOException {
+        DataOutputStream req = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(ch)));
+        MavenExecDaemon.writeString(req, MavenExecDaemon.PROTOCOL_HEADER);
+        MavenExecDaemon.writeString(req, Paths.get("").toAbsolutePath().toString());
+        MavenExecDaemon.writeMap(req, System.getenv());
+        MavenExecDaemon.writeStrings(req, List.of(args));
+        req.flush();
+
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(ch)));
+        Integer launchedCode = null;
+        while (true) {
+            byte type = in.readByte();
+            byte[] data = new byte[in.readInt()];
+            in.readFully(data);
+            switch (type) {
+                case MavenExecDaemon.FRAME_OUT -> out.write(data, 0, data.length);
+                case MavenExecDaemon.FRAME_ERR -> err.write(data, 0, data.length);
+                case MavenExecDaemon.FRAME_EXEC -> {
+                    out.flush();
+                    err.flush();
+                    launchedCode = launch(new DataInputStream(new ByteArrayInputStream(data)));
+                }
+                case MavenExecDaemon.FRAME_IN_START -> startInput(req);
+                case MavenExecDaemon.FRAME_RETURN -> {
+                    out.flush();
+                    err.flush();
+                    int code = new DataInputStream(new ByteArrayInputStream(data)).readInt();
+                    return launchedCode != null ? launchedCode : code;
+                }
+                default -> throw new IOException("invalid frame: " + type);
+            }
+        }
+    }
+
+    /**
+     * starts a daemon thread sending stdin as frames
+     * @param req the stream to the daemon
+     */
+    public void startInput(DataOutputStream req) {
+        Thread thread = new Thread(() -> {
+            byte[] buffer = new byte[8192];
+            try {
+                while (true) {
+                    int len = in.read(buffer);
+                    synchronized (req) {
+                        req.writeByte(MavenExecDaemon.FRAME_IN);
+                        req.writeInt(Math.max(0, len));
+                        if (len > 0) {
+                            req.write(buffer, 0, len);
+                        }
+                        req.flush();
+                    }
+                    if (len < 0) {
+                        break;
+                    }
+                }
+            } catch (IOException ex) {
+                //the daemon closed the connection
+            }
+        }, "mvn-exec-client-input");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public int launch(DataInputStream data) throws IOException {
+        String dir = MavenExecDaemon.readString(data);
+        Map<String, String> env = MavenExecDaemon.readMap(data);
+        List<String> command = MavenExecDaemon.readStrings(data);
+        ProcessBuilder builder = new ProcessBuilder(command)
+                .directory(new File(dir))
+                .inheritIO();
+        builder.environment().putAll(env);
+        try {
+            return builder.start().waitFor();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return 130;
+        }
+    }
+}
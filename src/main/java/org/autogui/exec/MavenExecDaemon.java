@@ -0,0 +1,641 @@
+package org.autogui.exec;
+
+import java.io.*;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+
+/**
+ * A long-lived process serving requests of {@link MavenExecJava} over a Unix domain socket.
+ * <ul>
+ *  <li>the daemon keeps a {@link ClassScanner}, loaded {@link MainIndex}es and resolved classpaths of {@link ClasspathCache} in memory</li>
+ *  <li>a request is sent by {@link MavenExecClient} with the working directory, the environment and arguments of the client.
+ *      the daemon runs them as a {@link MavenExecJava} whose outputs are sent back to the client</li>
+ *  <li>for running a program, the daemon only builds the command and the client launches it,
+ *      thus the program inherits the console of the client</li>
+ *  <li>with <code>--inProcess</code>, the daemon becomes a resident JVM running the program by itself.
+ *      dependency jars are loaded by a shared loader of {@link ClassLoaderCache} and only classes directories by a fresh child loader.
+ *      {@link System#out}, {@link System#err} and {@link System#in} are replaced with streams to the client during the run,
+ *      and system-properties of <code>-D</code> are restored after the run.
+ *      the loader of classes directories is closed after non-daemon threads of the program terminate.
+ *      Note that <code>System.exit</code> of the program terminates the daemon</li>
+ *  <li>with <code>--pool &lt;n&gt;</code> of the daemon, a <code>--direct</code> request is run by an idle JVM of {@link JvmPool}
+ *      which has already started with the classpath. stdin and outputs of the JVM are forwarded to the client</li>
+ *  <li>the socket is created in a directory only accessible by the user, checked by {@link UserDirectory};
+ *      a client receives the environment and launches commands of the daemon, thus it also checks the directory and the socket</li>
+ *  <li>each request is processed on its own virtual thread, thus a long run does not block other clients.
+ *      caches are shared by requests: {@link ClassLoaderCache} and {@link JvmPool} are synchronized,
+ *      a {@link MainIndex} is locked while it is updated, and compilation of a project is serialized by {@link CompileLock}.
+ *      an in-process run replaces the global {@link System#out} and system-properties,
+ *      thus another in-process request during the run falls back to a command launched by the client</li>
+ *  <li>the daemon exits after <code>idleSeconds</code> without requests, or by a request of <code>--daemonStop</code></li>
+ * </ul>
+ * The protocol consists of frames of a type byte, a 4-byte length and the payload.
+ * <ul>
+ *  <li>a request: {@link #PROTOCOL_HEADER}, the working directory, environment entries and arguments as strings of {@link #writeString(DataOutputStream, String)}</li>
+ *  <li>responses: {@link #FRAME_OUT} and {@link #FRAME_ERR} for outputs, {@link #FRAME_EXEC} for a command launched by the client,
+ *      and {@link #FRAME_RETURN} with an exit code at the end</li>
+ *  <li>{@link #FRAME_IN_START} requests the client to send its stdin as {@link #FRAME_IN}s; an empty one means the end</li>
+ * </ul>
+ * <pre>
+ *     mvn-exec --daemon &amp;         #starts a daemon at the default socket
+ *     mvn-exec -f MyMaCl           #the script uses the client if the socket exists
+ *     mvn-exec --daemonStop
+ * </pre>
+ */
+public class MavenExecDaemon {
+    public static String PROTOCOL_HEADER = "mvn-exec-daemon 1";
+    public static String SOCKET_ENV = "MVN_EXEC_SOCKET";
+
+    public static final byte FRAME_OUT = 'O';
+    public static final byte FRAME_ERR = 'E';
+    public static final byte FRAME_EXEC = 'X';
+    public static final byte FRAME_RETURN = 'R';
+    public static final byte FRAME_IN_START = 'S';
+    public static final byte FRAME_IN = 'I';
+
+    protected Path socketPath;
+    protected long idleSeconds;
+    protected boolean debug;
+    protected volatile boolean running = true;
+    protected Selector selector;
+    protected AtomicInteger activeRequests = new AtomicInteger();
+    /** held during an in-process run */
+    protected ReentrantLock residentLock = new ReentrantLock();
+    /** the stderr of the daemon, saved since {@link System#err} is replaced during an in-process run */
+    protected PrintStream logOut = System.err;
+
+    protected ClassScanner classScanner;
+    protected Map<Path, MainIndex> indexCache = new ConcurrentHashMap<>();
+    protected Map<String, List<String>> classpathCache = new ConcurrentHashMap<>();
+    protected ClassLoaderCache loaderCache = new ClassLoaderCache(512L << 20);
+    protected JvmPool jvmPool;
+
+    public MavenExecDaemon(Path socketPath, long idleSeconds, ClassScanner classScanner) {
+        this.socketPath = socketPath;
+        this.idleSeconds = idleSeconds;
+        this.classScanner = classScanner;
+    }
+
+    /**
+     * @return the path of the env {@link #SOCKET_ENV}, or <code>daemon.sock</code> in {@link UserDirectory#getDefault()}
+     */
+    public static Path getDefaultSocketPath() {
+        String env = System.getenv(SOCKET_ENV);
+        if (env != null && !env.isEmpty()) {
+            return Paths.get(env);
+        }
+        return UserDirectory.getDefault().resolve("daemon.sock");
+    }
+
+    public Path getSocketPath() {
+        return socketPath;
+    }
+
+    /**
+     * @param budgetBytes the total size of dependency jars whose loaders are kept
+     */
+    public void setLoaderBudget(long budgetBytes) {
+        loaderCache = new ClassLoaderCache(budgetBytes);
+    }
+
+    /**
+     * @param size the number of idle JVMs for each classpath. 0 disables the pool
+     */
+    public void setPoolSize(int size) {
+        jvmPool = (size > 0 ? new JvmPool(size, 4) : null);
+    }
+
+    public JvmPool getJvmPool() {
+        return jvmPool;
+    }
+
+    public ClassLoaderCache getLoaderCache() {
+        return loaderCache;
+    }
+
+    public void setDebug(boolean debug) {
+        this.debug = debug;
+    }
+
+    public void log(String fmt, Object... args) {
+        if (debug) {
+            logOut.printf("[daemon]:  %s\n", String.format(fmt, args));
+        }
+    }
+
+    public void run() {
+        try (ServerSocketChannel server = bind();
+             Selector selector = Selector.open()) {
+            this.selector = selector;
+            server.configureBlocking(false);
+            server.register(selector, SelectionKey.OP_ACCEPT);
+            log("listen %s", socketPath);
+            while (running) {
+                if (selector.select(idleSeconds * 1000L) == 0) {
+                    if (!running) {
+                        break;
+                    } else if (activeRequests.get() > 0) {
+                        continue;
+                    }
+                    log("idle timeout");
+                    break;
+                }
+                selector.selectedKeys().clear();
+                try {
+                    SocketChannel client = server.accept();
+                    if (client != null) {
+                        startRequest(client);
+                    }
+                } catch (Exception ex) {
+                    log("accept error: %s", ex);
+                }
+            }
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        } finally {
+            try {
+                Files.deleteIfExists(socketPath);
+            } catch (IOException ex) {
+                //ignore
+            }
+            classScanner.shutdown();
+            loaderCache.clear();
+            if (jvmPool != null) {
+                jvmPool.clear();
+            }
+        }
+    }
+
+    /**
+     * handles the request on a new virtual thread, and closes the client after the request
+     * @param client an accepted client
+     */
+    protected void startRequest(SocketChannel client) {
+        activeRequests.incrementAndGet();
+        Thread.ofVirtual().name("mvn-exec-request").start(() -> {
+            try (client) {
+                client.configureBlocking(true);
+                handle(client);
+            } catch (Exception ex) {
+                log("request error: %s", ex);
+            } finally {
+                activeRequests.decrementAndGet();
+            }
+        });
+    }
+
+    /** stops accepting requests; running requests are not interrupted */
+    public void stop() {
+        running = false;
+        Selector s = selector;
+        if (s != null) {
+            s.wakeup();
+        }
+    }
+
+    /**
+     * @return a server bound to the socket in a directory only accessible by the user; see {@link UserDirectory#prepare(Path)}
+     * @throws IOException failure of binding, or the directory is not private to the user
+     */
+    protected ServerSocketChannel bind() throws IOException {
+        UserDirectory.prepare(socketPath.toAbsolutePath().getParent());
+        if (Files.exists(socketPath, LinkOption.NOFOLLOW_LINKS)) {
+            if (isAlive(socketPath)) {
+                throw new IOException("daemon is already running: " + socketPath);
+            }
+            Files.delete(socketPath); //stale socket file
+        }
+        ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        server.bind(UnixDomainSocketAddress.of(socketPath));
+        try {
+            Files.setPosixFilePermissions(socketPath, PosixFilePermissions.fromString("rw-------"));
+        } catch (UnsupportedOperationException ex) {
+            //non-POSIX file-system
+        }
+        return server;
+    }
+
+    /**
+     * @param socketPath the socket file
+     * @return true if a daemon accepts a connection at the socket
+     */
+    public static boolean isAlive(Path socketPath) {
+        try (SocketChannel ch = SocketChannel.open(UnixDomainSocketAddress.of(socketPath))) {
+            return ch.isConnected();
+        } catch (IOException ex) {
+            return false;
+        }
+    }
+
+    public void handle(SocketChannel client) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(client)));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(client)));
+        if (!readString(in).equals(PROTOCOL_HEADER)) {
+            throw new IOException("invalid header");
+        }
+        String dir = readString(in);
+        Map<String, String> env = readMap(in);
+        List<String> args = readStrings(in);
+        log("request %s %s", dir, args);
+
+        int code = 0;
+        try (PrintStream reqOut = new PrintStream(new FrameOutputStream(out, FRAME_OUT), true, StandardCharsets.UTF_8);
+             PrintStream reqErr = new PrintStream(new FrameOutputStream(out, FRAME_ERR), true, StandardCharsets.UTF_8)) {
+            DaemonRequest req = new DaemonRequest(new File(dir), env, reqOut, reqErr, in, out);
+            try {
+                req.run(args.toArray(new String[0]));
+                code = req.getExitCode();
+            } catch (Exception ex) {
+                reqErr.println(ex);
+                if (req.debug) {
+                    ex.printStackTrace(reqErr);
+                }
+                code = 1;
+            }
+        }
+        synchronized (out) {
+            out.writeByte(FRAME_RETURN);
+            out.writeInt(4);
+            out.writeInt(code);
+            out.flush();
+        }
+    }
+
+    /**
+     * a request running on the daemon; outputs go to the client and launched commands are sent to the client
+     */
+    public class DaemonRequest extends MavenExecJava {
+        protected DataInputStream input;
+        protected DataOutputStream frames;
+        protected FrameInputStream stdin;
+
+        public DaemonRequest(File workingDirectory, Map<String, String> environment, PrintStream out, PrintStream err,
+                             DataInputStream input, DataOutputStream frames) {
+            this.workingDirectory = workingDirectory;
+            this.environment = environment;
+            this.out = out;
+            this.err = err;
+            this.input = input;
+            this.frames = frames;
+            this.classScanner = MavenExecDaemon.this.classScanner;
+            this.indexCache = MavenExecDaemon.this.indexCache;
+            this.classpathCache = MavenExecDaemon.this.classpathCache;
+        }
+
+        @Override
+        protected void updateDebug() {
+            //keeps the daemon's system-property
+        }
+
+        @Override
+        protected void setDebug() {
+            debug = true;
+        }
+
+        @Override
+        public void parseArgProp(String prop) {
+            int n = prop.indexOf('=');
+            propertySettings.add(n >= 0 ?
+                    new AbstractMap.SimpleEntry<>(prop.substring(0, n), prop.substring(n + 1)) :
+                    new AbstractMap.SimpleEntry<>(prop, ""));
+        }
+
+        /**
+         * runs the program in the daemon with a cached loader of dependency jars and a child loader of classes directories.
+         *  if another in-process run is running, the program is launched by the client instead
+         */
+        @Override
+        public int launchInProcess(File projectPath, List<String> classpath, String mainClass, List<String> args) {
+            if (!residentLock.tryLock()) {
+                log("in-process run in progress: fallback to a new process");
+                return launch(getCommand(projectPath, mainClass, args));
+            }
+            try {
+                return launchResident(classpath, mainClass, args);
+            } finally {
+                residentLock.unlock();
+            }
+        }
+
+        protected int launchResident(List<String> classpath, String mainClass, List<String> args) {
+            List<String> dirs = new ArrayList<>();
+            List<String> jars = new ArrayList<>();
+            for (String e : classpath) {
+                (new File(e).isDirectory() ? dirs : jars).add(e);
+            }
+            ClassLoader deps = loaderCache.acquire(jars);
+            InProcessLauncher.IsolatedClassLoader loader;
+            try {
+                loader = InProcessLauncher.createClassLoader(dirs, deps);
+            } catch (RuntimeException ex) {
+                loaderCache.release(deps);
+                throw ex;
+            }
+            log("resident %s: loaders %,d, jars %,d bytes", mainClass, loaderCache.size(), loaderCache.getTotalBytes());
+
+            Map<String, String> savedProps = new HashMap<>();
+            propertySettings.forEach(p -> savedProps.put(p.getKey(), System.getProperty(p.getKey())));
+            savedProps.put("java.class.path", System.getProperty("java.class.path"));
+            PrintStream savedOut = System.out;
+            PrintStream savedErr = System.err;
+            InputStream savedIn = System.in;
+            try {
+                System.setOut(out);
+                System.setErr(err);
+                System.setIn(getStandardInput());
+                return new InProcessLauncher(classpath)
+                        .setProperties(propertySettings)
+                        .run(loader, mainClass, args);
+            } finally {
+                InProcessLauncher.closeAfterProgram(loader, () -> loaderCache.release(deps)); //the cache keeps deps until then
+                out.flush();
+                err.flush();
+                System.setOut(savedOut);
+                System.setErr(savedErr);
+                System.setIn(savedIn);
+                savedProps.forEach((k, v) -> {
+                    if (v == null) {
+                        System.clearProperty(k);
+                    } else {
+                        System.setProperty(k, v);
+                    }
+                });
+            }
+        }
+
+        @Override
+        public void executeDaemon() {
+            err.println("daemon is already running: " + socketPath);
+        }
+
+        /** only <code>--daemonStop</code> parsed as an option stops the daemon, not a program argument */
+        @Override
+        public void executeDaemonStop() {
+            stop();
+            err.println("daemon stopped: " + socketPath);
+        }
+
+        @Override
+        public boolean isPoolAvailable() {
+            return direct && jvmPool != null;
+        }
+
+        @Override
+        public int launchPooled(File projectPath, List<String> classpath, String mainClass, List<String> args) {
+            Process p = jvmPool.take(() -> ProcessShell.get(JvmPool.getWorkerCommand(getJavaCommandName(), jvmOptions, classpath))
+                    .set(b -> {
+                        b.directory(getFile(".").getAbsoluteFile());
+                        setEnvironment(b);
+                    }));
+            log("pooled %s: pid %d", mainClass, p.pid());
+            try {
+                DataOutputStream req = new DataOutputStream(new BufferedOutputStream(p.getOutputStream()));
+                Map<String, String> props = new LinkedHashMap<>();
+                propertySettings.forEach(e -> props.put(e.getKey(), e.getValue()));
+                writeMap(req, props);
+                writeString(req, mainClass);
+                writeStrings(req, args);
+                req.flush();
+                //the input pump is not interrupted: it reads the socket of the client, which an interrupt closes.
+                // it stops at the next frame after the exit, or by closing the connection at the end of the request
+                pump(getStandardInput(), req, true, p::isAlive);
+                Thread outPump = pump(p.getInputStream(), out, false, () -> true);
+                Thread errPump = pump(p.getErrorStream(), err, false, () -> true);
+                int code = p.waitFor();
+                outPump.join();
+                errPump.join();
+                return code;
+            } catch (Exception ex) {
+                p.destroy();
+                throw new RuntimeException(ex);
+            }
+        }
+
+        /**
+         * @return a stream of stdin of the client, requested by {@link #FRAME_IN_START} at the first call
+         */
+        @Override
+        public FrameInputStream getStandardInput() {
+            if (stdin == null) {
+                try {
+                    synchronized (frames) {
+                        frames.writeByte(FRAME_IN_START);
+                        frames.writeInt(0);
+                        frames.flush();
+                    }
+                } catch (IOException ex) {
+                    throw new RuntimeException(ex);
+                }
+                stdin = new FrameInputStream(input);
+            }
+            return stdin;
+        }
+
+        /**
+         * @param from the source, closed at the end
+         * @param to the destination
+         * @param closeTo if true, the destination is closed at the end of the source
+         * @param active checked before each read; the pump stops if it returns false
+         * @return the started daemon thread
+         */
+        protected Thread pump(InputStream from, OutputStream to, boolean closeTo, BooleanSupplier active) {
+            Thread thread = new Thread(() -> {
+                byte[] buffer = new byte[8192];
+                try (from) {
+                    int len;
+                    while (active.getAsBoolean() && (len = from.read(buffer)) >= 0) {
+                        to.write(buffer, 0, len);
+                        to.flush();
+                    }
+                    if (closeTo) {
+                        to.close();
+                    }
+                } catch (IOException ex) {
+                    //the process exited or the client closed the connection
+                }
+            }, "mvn-exec-pool-pump");
+            thread.setDaemon(true);
+            thread.start();
+            return thread;
+        }
+
+        @Override
+        public int launch(ProcessShell<?> sh) {
+            ProcessBuilder builder = sh.getBuilder();
+            Map<String, String> envDiff = getEnvironmentDiff(builder);
+            try {
+                ByteArrayOutputStream buf = new ByteArrayOutputStream();
+                DataOutputStream data = new DataOutputStream(buf);
+                writeString(data, (builder.directory() == null ? getFile(".") : builder.directory()).getAbsolutePath());
+                writeMap(data, envDiff);
+                writeStrings(data, builder.command());
+                data.flush();
+                out.flush();
+                err.flush();
+                synchronized (frames) {
+                    frames.writeByte(FRAME_EXEC);
+                    frames.writeInt(buf.size());
+                    buf.writeTo(frames);
+                    frames.flush();
+                }
+                return 0;
+            } catch (IOException ex) {
+                throw new RuntimeException(ex);
+            }
+        }
+    }
+
+    /** an input-stream reading {@link #FRAME_IN}s sent by the client */
+    public static class FrameInputStream extends InputStream {
+        protected DataInputStream in;
+        protected byte[] buffer = new byte[0];
+        protected int position;
+        protected boolean end;
+
+        public FrameInputStream(DataInputStream in) {
+            this.in = in;
+        }
+
+        protected boolean fill() throws IOException {
+            while (!end && position >= buffer.length) {
+                byte type = in.readByte();
+                int len = in.readInt();
+                if (type != FRAME_IN) {
+                    throw new IOException("invalid frame: " + type);
+                }
+                buffer = new byte[len];
+                in.readFully(buffer);
+                position = 0;
+                end = (len == 0);
+            }
+            return !end;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return fill() ? (buffer[position++] & 0xFF) : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!fill()) {
+                return -1;
+            }
+            int n = Math.min(len, buffer.length - position);
+            System.arraycopy(buffer, position, b, off, n);
+            position += n;
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return buffer.length - position;
+        }
+    }
+
+    /** an output-stream sending each written data as a frame */
+    public static class FrameOutputStream extends OutputStream {
+        protected DataOutputStream out;
+        protected byte type;
+
+        public FrameOutputStream(DataOutputStream out, byte type) {
+            this.out = out;
+            this.type = type;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return;
+            }
+            synchronized (out) {
+                out.writeByte(type);
+                out.writeInt(len);
+                out.write(b, off, len);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            synchronized (out) {
+                out.flush();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+
+    ///////////////////
+
+    /**
+     * writes a string as the length of UTF-8 bytes and the bytes; unlike {@link DataOutputStream#writeUTF(String)}, the length is not limited to 64K
+     * @param out the destination
+     * @param s the written string
+     * @throws IOException failure of writing
+     */
+    public static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bs = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bs.length);
+        out.write(bs);
+    }
+
+    public static String readString(DataInputStream in) throws IOException {
+        byte[] bs = new byte[in.readInt()];
+        in.readFully(bs);
+        return new String(bs, StandardCharsets.UTF_8);
+    }
+
+    public static void writeStrings(DataOutputStream out, List<String> list) throws IOException {
+        out.writeInt(list.size());
+        for (String s : list) {
+            writeString(out, s);
+        }
+    }
+
+    public static List<String> readStrings(DataInputStream in) throws IOException {
+        int n = in.readInt();
+        List<String> list = new ArrayList<>(n);
+        for (int i = 0; i < n; ++i) {
+            list.add(readString(in));
+        }
+        return list;
+    }
+
+    public static void writeMap(DataOutputStream out, Map<String, String> map) throws IOException {
+        out.writeInt(map.size());
+        for (Map.Entry<String, String> e : map.entrySet()) {
+            writeString(out, e.getKey());
+            writeString(out, e.getValue());
+        }
+    }
+
+    public static Map<String, String> readMap(DataInputStream in) throws IOException {
+        int n = in.readInt();
+        Map<String, String> map = new LinkedHashMap<>();
+        for (int i = 0; i < n; ++i) {
+            String k = readString(in);
+            map.put(k, readString(in));
+        }
+        return map;
+    }
+}
@@ -1,14 +1,18 @@
 package org.autogui.exec;
 
 import java.io.File;
+import java.io.FilterOutputStream;
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.InvalidPathException;
-import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.function.Consumer;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -16,7 +20,11 @@ import java.util.stream.Stream;
 public class MavenExecJava {
 
     public static void main(String[] args) {
-        new MavenExecJava().run(args);
+        MavenExecJava exec = new MavenExecJava();
+        exec.run(args);
+        if (exec.getExitCode() != 0) {
+            System.exit(exec.getExitCode());
+        }
     }
 
     protected List<File> projectPaths = new ArrayList<>();
@@ -25,19 +33,53 @@ public class MavenExecJava {
     protected List<Map.Entry<String,String>> propertySettings = new ArrayList<>();
     protected LinkedHashSet<ExecMode> modes = new LinkedHashSet<>();
     protected boolean compile;
+    protected boolean forceCompile;
+    /** projects whose sources were checked in the run, for checking each project once */
+    protected Set<File> checkedProjects = new HashSet<>();
     protected boolean completeWorkingDirectory = false;
     protected boolean autoCompile = true;
+    protected boolean incrementalCompile = true;
+    protected boolean useIndex = true;
+    protected boolean namePrefilter = true;
+    protected int topCount = 1;
+    protected ClassScanner classScanner = new ClassScanner();
+    /** loaded indexes kept by a daemon, or null */
+    protected Map<Path, MainIndex> indexCache;
+    /** resolved classpaths by fingerprints kept by a daemon, or null */
+    protected Map<String, List<String>> classpathCache;
     protected String logLevel = "error";
 
     protected boolean debug;
 
+    /** the destinations of messages; a daemon replaces them with streams to a client */
+    protected PrintStream out = System.out;
+    protected PrintStream err = System.err;
+    /** the environment of launched commands; a daemon replaces it with the environment of a client */
+    protected Map<String, String> environment = System.getenv();
+    /** the base of relative paths, or null for the current directory */
+    protected File workingDirectory;
+
     public static String MAVEN_OPTS_LOG_LEVEL = "-Dorg.slf4j.simpleLogger.defaultLogLevel=";
     public static String MAVEN_EXEC_DEBUG = "org.autogui.exec.debug";
 
     protected List<String> mvnOptions = new ArrayList<>();
     protected List<String> jvmOptions = new ArrayList<>();
     protected boolean execExec = true;
+    protected boolean direct = false;
+    protected boolean inProcess = false;
+    protected boolean cds = false;
+    protected boolean cdsReport = false;
+    protected List<String> cdsOptions = List.of();
+    protected List<String> cdsClasspath;
+    protected File handoffFile;
+    protected boolean argumentFile = false;
+    protected int exitCode;
     protected String mvnCommand;
+    protected String javaCommand;
+    protected Path socketPath;
+    protected long daemonIdleSeconds = 3 * 60 * 60;
+    protected long loaderBudgetMegabytes = 512;
+    protected int poolSize = 0;
 
     public enum ExecMode {
         Execute,
@@ -46,6 +88,8 @@ public class MavenExecJava {
         ListMainClass,
         GetCommand,
         Help,
+        Daemon,
+        DaemonStop,
     }
 
     public MavenExecJava() {
@@ -59,7 +103,7 @@ public class MavenExecJava {
 
     public void log(String fmt, Object... args) {
         if (debug) {
-            System.err.printf("[%s]:  %s\n", LocalDateTime.now(), String.format(fmt, args));
+            err.printf("[%s]:  %s\n", LocalDateTime.now(), String.format(fmt, args));
         }
     }
 
@@ -71,6 +115,14 @@ public class MavenExecJava {
             help();
             return;
         }
+        if (modes.contains(ExecMode.Daemon)) {
+            executeDaemon();
+            return;
+        }
+        if (modes.contains(ExecMode.DaemonStop)) {
+            executeDaemonStop();
+            return;
+        }
 
         checkProjectsPom();
 
@@ -119,12 +171,26 @@ public class MavenExecJava {
         }
     }
 
+    @SuppressWarnings("try") //the lock is only held by the block
     public void compileProjects() {
         log("compile");
-        projectPaths.forEach(this::compileProject);
+        if (forceCompile) {
+            projectPaths.forEach(projectDir -> {
+                checkedProjects.add(projectDir);
+                try (CompileLock lock = acquireCompileLock(projectDir)) {
+                    Map<String, String> fingerprint = new SourceFingerprint(projectDir).getFingerprint();
+                    if (compileProject(projectDir, "compile") == 0) {
+                        saveSourceFingerprint(projectDir, fingerprint);
+                        saveSourceLists(projectDir);
+                    }
+                }
+            });
+        } else {
+            projectPaths.forEach(this::compileProjectIfChanged);
+        }
     }
 
-    private void updateDebug() {
+    protected void updateDebug() {
         debug = System.getProperty(MAVEN_EXEC_DEBUG, "false").equals("true");
     }
 
@@ -142,13 +208,128 @@ public class MavenExecJava {
             if (main == null) {
                 throw new NoSuchMainClassException(mainClass);
             }
+            if (isInProcessAvailable()) {
+                List<String> classpath = getCachedClasspath(main.getPath());
+                if (classpath != null) {
+                    if (def) {
+                        err.println("> (in-process) " + main.getName() + " " + String.join(" ", arguments));
+                    }
+                    exitCode = launchInProcess(main.getPath(), classpath, main.getName(), arguments);
+                    return;
+                }
+                log("fallback to a new process");
+            }
+            if (isPoolAvailable()) {
+                List<String> classpath = getCachedClasspath(main.getPath());
+                if (classpath != null) {
+                    if (def) {
+                        err.println("> (pooled) " + main.getName() + " " + String.join(" ", arguments));
+                    }
+                    exitCode = launchPooled(main.getPath(), classpath, main.getName(), arguments);
+                    return;
+                }
+                log("fallback to a new process");
+            }
+            if (cdsReport) {
+                reportCds(main, def);
+                return;
+            }
             ProcessShell<?> sh = getCommand(main.getPath(), main.getName(), arguments);
             log("command %s", sh);
             if (def) {
-                sh.echo();
+                echo(sh);
+            }
+            if (handoffFile != null) {
+                handoff(sh);
+                return;
             }
-            sh.runToReturnCode();
+            exitCode = launch(sh);
+        }
+    }
+
+    /**
+     * launches the main-class without and with the CDS archive, and prints the elapsed times.
+     *  if the archive does not exist, the first launch with the archive creates it and the launch is repeated
+     * @param main the main class
+     * @param def if true, echoes commands
+     */
+    public void reportCds(MainClassInfo main, boolean def) {
+        cds = false;
+        long without = launchTimed(getCommand(main.getPath(), main.getName(), arguments), def);
+        cds = true;
+        ProcessShell<?> sh = getCommand(main.getPath(), main.getName(), arguments);
+        Path archive = getCdsArchiveFile();
+        if (archive == null) {
+            err.printf("cds report: without archive %,d ms, no archive for the JDK\n", without);
+            return;
+        }
+        boolean creating = !Files.exists(archive);
+        long first = launchTimed(sh, def);
+        long with = creating ? launchTimed(getCommand(main.getPath(), main.getName(), arguments), def) : first;
+        err.printf("cds report: without archive %,d ms, with archive %,d ms%s: %s\n", without, with,
+                (creating ? String.format(" (creating %,d ms)", first) : ""), archive);
+    }
+
+    protected long launchTimed(ProcessShell<?> sh, boolean def) {
+        if (def) {
+            echo(sh);
+        }
+        long start = System.nanoTime();
+        exitCode = launch(sh);
+        return (System.nanoTime() - start) / 1_000_000L;
+    }
+
+    /**
+     * @return the exit code of the launched program, or 0
+     */
+    public int getExitCode() {
+        return exitCode;
+    }
+
+    /**
+     * @return true if --inProcess and no -J options, which cannot be applied to the current JVM
+     */
+    public boolean isInProcessAvailable() {
+        if (inProcess && !jvmOptions.isEmpty()) {
+            log("in-process is disabled by JVM options: %s", jvmOptions);
+            return false;
         }
+        return inProcess;
+    }
+
+    /**
+     * runs the main-class by a {@link InProcessLauncher} with {@link #propertySettings}
+     * @param projectPath the project of the main class, used by the daemon for a fallback
+     * @param classpath the classpath from {@link #getCachedClasspath(File)}
+     * @param mainClass the main class
+     * @param args arguments of the main class
+     * @return the exit code
+     */
+    public int launchInProcess(File projectPath, List<String> classpath, String mainClass, List<String> args) {
+        log("in-process %s %s", mainClass, classpath);
+        return new InProcessLauncher(classpath)
+                .setProperties(propertySettings)
+                .run(mainClass, args);
+    }
+
+    /**
+     * @return true if a pre-started JVM is available for --direct. only the daemon keeps a {@link JvmPool}
+     */
+    public boolean isPoolAvailable() {
+        return false;
+    }
+
+    /**
+     * runs the main-class by a pre-started JVM of {@link JvmPool}, overridden by the daemon.
+     *  without a pool, it launches a new process of {@link #getCommand(File, String, List)}
+     * @param projectPath the project of the main class
+     * @param classpath the classpath from {@link #getCachedClasspath(File)}
+     * @param mainClass the main class
+     * @param args arguments of the main class
+     * @return the exit code
+     */
+    public int launchPooled(File projectPath, List<String> classpath, String mainClass, List<String> args) {
+        return launch(getCommand(projectPath, mainClass, args));
     }
 
     public void executeGetCommand() {
@@ -158,17 +339,17 @@ public class MavenExecJava {
                 throw new NoSuchMainClassException(mainClass);
             }
             ProcessShell<?> sh = getCommand(main.getPath(), main.getName(), arguments);
-            System.out.println(sh.getEchoString());
+            out.println(sh.getEchoString());
         }
     }
 
     public void executeFindMainClass() {
         if (mainClass != null) {
-            MainClassInfo main = findMainClassFromProjects(mainClass);
-            if (main == null) {
+            List<MainClassInfo> mains = findMainClassesFromProjects(mainClass, topCount);
+            if (mains.isEmpty()) {
                 throw new NoSuchMainClassException(mainClass);
             }
-            System.out.println(main.getName());
+            mains.forEach(main -> out.println(main.getName()));
         }
     }
 
@@ -182,19 +363,41 @@ public class MavenExecJava {
         listMainClassesFromProjects();
     }
 
+    public void executeDaemon() {
+        MavenExecDaemon daemon = new MavenExecDaemon(getSocketPath(), daemonIdleSeconds, classScanner);
+        daemon.setDebug(debug);
+        daemon.setLoaderBudget(loaderBudgetMegabytes << 20);
+        daemon.setPoolSize(poolSize);
+        log("daemon %s", daemon.getSocketPath());
+        daemon.run();
+    }
+
+    /** a running daemon handles the request via the client by overriding the method */
+    public void executeDaemonStop() {
+        out.println("no daemon: " + getSocketPath());
+    }
+
+    public Path getSocketPath() {
+        if (socketPath == null) {
+            socketPath = MavenExecDaemon.getDefaultSocketPath();
+        }
+        return socketPath;
+    }
+
 
     public void parseArgs(String... args) {
         boolean argsPart = false;
+        List<String> argumentSources = new ArrayList<>();
         for (int i = 0, l = args.length; i < l; ++i) {
             String arg = args[i];
             if (!argsPart) {
                 if (arg.equals("-p") || arg.equals("--project")) {
                     ++i;
-                    projectPaths.addFirst(new File(args[i]));
+                    projectPaths.addFirst(getFile(args[i]));
                 } else if (arg.equals("-pr") || arg.equals("--projectReset")) {
                     ++i;
                     projectPaths.clear();
-                    projectPaths.addFirst(new File(args[i]));
+                    projectPaths.addFirst(getFile(args[i]));
                 } else if (arg.equals("-f") || arg.equals("--find")) {
                     modes.add(ExecMode.FindMainClass);
                 } else if (arg.equals("-l") || arg.equals("--list")) {
@@ -208,8 +411,23 @@ public class MavenExecJava {
                     break;
                 } else if (arg.equals("-c") || arg.equals("--compile")) {
                     compile = true;
+                } else if (arg.equals("-fc") || arg.equals("--forceCompile")) {
+                    compile = true;
+                    forceCompile = true;
                 } else if (arg.equals("-sac") || arg.equals("--suppressAutoCompile")) {
                     autoCompile = false;
+                } else if (arg.equals("-sic") || arg.equals("--suppressIncrementalCompile")) {
+                    incrementalCompile = false;
+                } else if (arg.equals("--noIndex")) {
+                    useIndex = false;
+                } else if (arg.equals("--noNamePrefilter")) {
+                    namePrefilter = false;
+                } else if (arg.equals("--top")) {
+                    ++i;
+                    topCount = Math.max(1, Integer.parseInt(args[i]));
+                } else if (arg.equals("--scanThreads")) {
+                    ++i;
+                    classScanner = new ClassScanner(Integer.parseInt(args[i]));
                 } else if (arg.equals("-sc") || arg.equals("--suppressComplete")) {
                     completeWorkingDirectory = false;
                 } else if (arg.equals("--complete")) {
@@ -240,6 +458,42 @@ public class MavenExecJava {
                 } else if (arg.equals("--mvn")) {
                     ++i;
                     mvnCommand = args[i];
+                } else if (arg.equals("--daemon")) {
+                    modes.add(ExecMode.Daemon);
+                } else if (arg.equals("--daemonStop")) {
+                    modes.add(ExecMode.DaemonStop);
+                } else if (arg.equals("--daemonIdle")) {
+                    ++i;
+                    daemonIdleSeconds = Long.parseLong(args[i]);
+                } else if (arg.equals("--loaderBudget")) {
+                    ++i;
+                    loaderBudgetMegabytes = Long.parseLong(args[i]);
+                } else if (arg.equals("--pool")) {
+                    ++i;
+                    poolSize = Integer.parseInt(args[i]);
+                } else if (arg.equals("--socket")) {
+                    ++i;
+                    socketPath = getFile(args[i]).toPath();
+                } else if (arg.equals("--direct")) {
+                    direct = true;
+                } else if (arg.equals("--cds")) {
+                    cds = true;
+                } else if (arg.equals("--cdsReport")) {
+                    cds = true;
+                    cdsReport = true;
+                } else if (arg.equals("--argfile")) {
+                    argumentFile = true;
+                } else if (arg.equals("--argsFrom")) {
+                    ++i;
+                    argumentSources.add(args[i]);
+                } else if (arg.equals("--handoff")) {
+                    ++i;
+                    handoffFile = getFile(args[i]);
+                } else if (arg.equals("--inProcess")) {
+                    inProcess = true;
+                } else if (arg.equals("--java")) {
+                    ++i;
+                    javaCommand = args[i];
                 } else if (arg.equals("--")) {
                     argsPart = true;
                 } else {
@@ -257,8 +511,11 @@ public class MavenExecJava {
                 }
             }
         }
+        for (String source : argumentSources) {
+            readArguments(source);
+        }
         if (projectPaths.isEmpty()) {
-            projectPaths.add(new File("."));
+            projectPaths.add(getFile("."));
         }
         if (modes.isEmpty()) {
             if (mainClass == null) {
@@ -270,6 +527,30 @@ public class MavenExecJava {
         updateDebug();
     }
 
+    /**
+     * appends lines of the source to {@link #arguments}
+     * @param source a file path, or "-" for stdin
+     */
+    public void readArguments(String source) {
+        if (source.equals("-")) {
+            ArgumentFile.readLines(getStandardInput(), arguments::add);
+        } else {
+            try (InputStream in = Files.newInputStream(getFile(source).toPath())) {
+                ArgumentFile.readLines(in, arguments::add);
+            } catch (IOException ex) {
+                throw new RuntimeException(ex);
+            }
+        }
+        log("arguments from %s: %,d", source, arguments.size());
+    }
+
+    /**
+     * @return the stdin of mvn-exec. the daemon overrides it for reading stdin of the client
+     */
+    public InputStream getStandardInput() {
+        return System.in;
+    }
+
     protected void setDebug() {
         debug = true;
         System.setProperty(MAVEN_EXEC_DEBUG, "true");
@@ -301,12 +582,18 @@ public class MavenExecJava {
                 "     -p  | --project <path>      :  add a maven project directory. repeatable. later items have high precedence.\n" +
                 "     -pr | --projectReset <path> :  clear existing project directories and add a directory.\n" +
                 "     -f  | --find       :  show the matched main-class name.\n" +
+                "     --top <n>          :  with -f, show the best n matched main-class names in the order of scores.\n" +
                 "     -l  | --list       :  show list of main-classes.\n" +
                 "     -g  | --get        :  show the command line.\n" +
                 "     -r  | --run        :  execute the command line. automatically set (with showing the command line) if no -f,-l or -g.\n" +
-                "     -c  | --compile    :  \"mvn compile\" before execution.\n" +
+                "     -c  | --compile    :  \"mvn compile\" before execution if sources are changed from the last compilation.\n" +
+                "     -fc | --forceCompile :  \"mvn compile\" before execution even if no sources are changed.\n" +
                 "     --execJava         :  use \"exec:java\" instead of \"exec:exec\". it enables completion of relative path.\n" +
-                "     -sac| --suppressAutoCompile :  suppress checking target directory and executing \"mvn compile\".\n" +
+                "     -sac| --suppressAutoCompile :  suppress checking sources and executing \"mvn compile\".\n" +
+                "     -sic| --suppressIncrementalCompile :  always use \"mvn compile\" instead of compiling changed sources by javac in the process.\n" +
+                "     --noIndex          :  do not use nor update the main-class index \"target/" + MainIndex.INDEX_DIR_NAME + "\".\n" +
+                "     --noNamePrefilter  :  read all class-files instead of skipping files whose names derived from paths cannot match.\n" +
+                "     --scanThreads <n>  :  the number of threads for parsing class-files. the default is the number of processors.\n" +
                 "     --complete                  :  turn on completion of relative path for arguments.\n" +
                 "     -sc | --suppressComplete    :  suppress completion of relative path for arguments.\n" +
                 "                 The completion is enabled by --execJava. The subsequent -sc can disables the completion. \n" +
@@ -329,35 +616,79 @@ public class MavenExecJava {
                 "     --debug            :  show debugging messages.\n" +
                 "     -X                 :  --debug and pass -X to mvn.\n" +
                 "     --mvn <mvnCommand> :  set the command name of maven. the default is \"mvn\" or \"mvn.cmd\" for Windows.\n" +
+                "     --direct           :  launch \"java -cp <classpath>\" directly without \"exec:exec\".\n" +
+                "                           The classpath is resolved by \"mvn dependency:build-classpath\" and cached as \"target/" + ClasspathCache.CACHE_FILE_NAME + "\"\n" +
+                "                           until pom.xml or its parent poms are changed.\n" +
+                "     --cds              :  launch java with an AppCDS archive under target/.mvn-exec-cds/, created at the first launch (JDK 19 or later).\n" +
+                "                           the archive is re-created when the classpath or the JDK is changed.\n" +
+                "     --cdsReport        :  --cds, and launch the main-class without and with the archive, and report the elapsed times.\n" +
+                "     --argfile          :  pass options, the main-class and arguments by an argument file \"java @file\".\n" +
+                "                           it is automatically used for a command line longer than " + ArgumentFile.THRESHOLD + " characters.\n" +
+                "     --argsFrom <file>  :  append lines of the file to arguments. \"-\" means stdin.\n" +
+                "     --handoff <file>   :  write the command to the file as NUL-terminated strings instead of launching it:\n" +
+                "                           the working directory, changed environment variables (NAME=VALUE), \"--\" and the command line.\n" +
+                "                           the script executes the command by exec.\n" +
+                "     --inProcess        :  run the main-class in the JVM of mvn-exec with a class-loader of the classpath cached as --direct.\n" +
+                "                           -D<name>=<value> are set as system-properties. It falls back to a new process with -J<opt>.\n" +
+                "     --java <javaCommand> :  set the command of java for --direct. the default is \"$JAVA_HOME/bin/java\" or \"java\".\n" +
+                "     --daemon           :  start a daemon keeping indexes and classpaths in memory. the script uses the daemon if its socket exists.\n" +
+                "     --daemonStop       :  stop the running daemon.\n" +
+                "     --daemonIdle <sec> :  the daemon exits after the idle seconds. 0 means no timeout. the default is 10800.\n" +
+                "     --loaderBudget <MB> : the total size of dependency jars whose class-loaders are kept by the daemon for --inProcess.\n" +
+                "                           least-recently used loaders are closed beyond the size. the default is 512.\n" +
+                "     --pool <n>         :  the number of idle JVMs kept by the daemon for each classpath of --direct. the default is 0.\n" +
+                "     --socket <path>    :  the socket file of the daemon. the default is $" + MavenExecDaemon.SOCKET_ENV + " or \"$XDG_RUNTIME_DIR/mvn-exec/daemon.sock\" or \"$TMPDIR/mvn-exec-$USER/daemon.sock\".\n" +
                 "     --                 :  indicate the start of mainClass and/or arguments.s\n";
-        System.out.println(helpMessage);
+        out.println(helpMessage);
     }
 
     public MainClassInfo findMainClassFromProjects(String name) {
-        Pattern namePattern = MainFinder.getPatternFromString(name);
+        List<MainClassInfo> mains = findMainClassesFromProjects(name, 1);
+        return mains.isEmpty() ? null : mains.getFirst();
+    }
 
-        log("findMainClass pattern: %s", namePattern);
+    /**
+     * scans projects and selects the best matched main-classes by a {@link MainClassSelector}.
+     *  candidates are streamed from scanning into the selector, thus the memory usage is bounded by <code>top</code>.
+     * @param name a query string
+     * @param top the maximum number of returned main-classes
+     * @return selected main-classes sorted by descending scores; earlier projects have precedence for the same score
+     */
+    public List<MainClassInfo> findMainClassesFromProjects(String name, int top) {
+        NameMatcher nameMatcher = new NameMatcher(name);
+
+        log("findMainClass pattern: %s", nameMatcher.getPattern());
         int projectScale = (projectPaths.isEmpty() ? 0 : (int) Math.log10(projectPaths.size())) + 1;
         int scoreFactor = (int) Math.pow(10, projectScale);
         log("projectScale: %d, scoreFactor: %d", (Integer) projectScale, (Integer) scoreFactor);
 
-        List<MainClassInfo> totalMains = new ArrayList<>();
+        //the fast path only finds exact names, thus it is used only for the single best one
+        boolean qualified = isQualifiedName(name) && top <= 1;
+        MainClassSelector selector = new MainClassSelector(top);
         int i = 0;
         for (File path : projectPaths) {
-            List<MainClassInfo> main = findMainClass(path, namePattern);
             //score by project order
             int fi = projectPaths.size() - i;
-            main = main.stream()
-                    .map(m -> m.withScore(m.getScore() * scoreFactor + fi))
-                    .toList();
-            totalMains.addAll(main);
+            Consumer<MainClassInfo> scored = m -> selector.accept(m.withScore(m.getScore() * scoreFactor + fi));
+            boolean found = false;
+            if (qualified) {
+                List<MainClassInfo> main = findMainClassQualified(path, name, nameMatcher);
+                main.forEach(scored);
+                found = !main.isEmpty();
+            }
+            if (!found) {
+                findMainClass(path, nameMatcher, scored);
+            }
+            if (qualified && !selector.isEmpty()) {
+                break; //all candidates of a qualified name have the same score, thus the first project has precedence
+            }
             ++i;
         }
-        totalMains.sort(
-                Comparator.comparingInt(MainClassInfo::getScore)
-                        .reversed());
-        totalMains.forEach(m -> log("sorted %s", m));
-        return totalMains.isEmpty() ? null : totalMains.getFirst();
+        List<MainClassInfo> mains = selector.getSelected();
+        log("candidates: %,d", selector.getCount());
+        mains.forEach(m -> log("selected %s", m));
+        logScanCount();
+        return mains;
     }
 
     public static class MainClassInfo {
@@ -403,38 +734,164 @@ public class MavenExecJava {
 
     public void listMainClassesFromProjects() {
         projectPaths.forEach(this::listMainClasses);
+        logScanCount();
+    }
+
+    public void logScanCount() {
+        long matched = classScanner.getMatchedCount();
+        long rejected = classScanner.getRejectedCount();
+        log("parsed class-files: %,d, skipped by constant-pool: %,d (%.1f%%)",
+                matched, rejected, (matched == 0 ? 0.0 : rejected * 100.0 / matched));
     }
 
     public void listMainClasses(File projectPath) {
         for (File dir : getClassesDirectories(projectPath)) {
+            if (dir.isDirectory() && useIndex) {
+                getMainIndex(dir, null).getMainEntries()
+                        .forEach(e -> out.println(e.getName()));
+            } else if (dir.isDirectory()) {
+                findMainClassFromClassesDir(dir, null,
+                        main -> out.println(main.getName()));
+            }
+        }
+    }
+
+    /**
+     * @param name a query string
+     * @return true if the name is a sequence of Java identifiers separated by ".", like <code>"my.pack.MyMainClass"</code>
+     */
+    public static boolean isQualifiedName(String name) {
+        if (!name.contains(".")) {
+            return false;
+        }
+        for (String seg : name.split("\\.", -1)) {
+            if (seg.isEmpty() || !Character.isJavaIdentifierStart(seg.charAt(0))) {
+                return false;
+            }
+            for (int i = 1, l = seg.length(); i < l; ++i) {
+                if (!Character.isJavaIdentifierPart(seg.charAt(i))) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * fast path for a qualified name: it first checks the class-file of the name directly,
+     *  and then walks only directories of the package prefix of the name for nested classes.
+     * @param projectDir the project directory
+     * @param qualifiedName a name satisfying {@link #isQualifiedName(String)}
+     * @param nameMatcher the matcher from the name
+     * @return the main classes exactly matching the qualified name, or empty
+     */
+    public List<MainClassInfo> findMainClassQualified(File projectDir, String qualifiedName, NameMatcher nameMatcher) {
+        for (File dir : getClassesDirectories(projectDir)) {
+            if (dir.isDirectory()) {
+                MainClassInfo main = findMainClassDirect(dir, qualifiedName, nameMatcher);
+                if (main != null) {
+                    log("direct: %s", main);
+                    return List.of(main.withPath(projectDir));
+                }
+            }
+        }
+        for (File dir : getClassesDirectories(projectDir)) {
             if (dir.isDirectory()) {
-                try (Stream<Path> paths = findClassFromClassesDir(dir)) {
-                    paths.map(p -> matchClass(p, null))
-                            .filter(Objects::nonNull)
-                            .map(MainClassInfo::getName)
-                            .forEach(System.out::println);
+                List<Path> paths;
+                try (Stream<Path> ps = findClassFromClassesDir(dir, qualifiedName)) {
+                    paths = ps.toList();
                 } catch (Exception ex) {
                     throw new RuntimeException(ex);
                 }
+                log("%s: pruned class-files for %s: %,d", dir, qualifiedName, paths.size());
+                List<MainClassInfo> mains = new ArrayList<>();
+                classScanner.forEach(paths, p -> matchClass(p, nameMatcher),
+                        m -> mains.add(m.withPath(projectDir)));
+                if (!mains.isEmpty()) {
+                    return mains;
+                }
             }
         }
+        return List.of();
+    }
+
+    /**
+     * @param classesDir a classes directory like <code>target/classes</code>
+     * @param qualifiedName a qualified name like <code>"my.pack.MyMainClass"</code>
+     * @param nameMatcher the matcher from the name
+     * @return the main-class of <code>classesDir/my/pack/MyMainClass.class</code>, or null
+     */
+    public MainClassInfo findMainClassDirect(File classesDir, String qualifiedName, NameMatcher nameMatcher) {
+        Path file = classesDir.toPath().resolve(qualifiedName.replace('.', '/') + ".class");
+        if (Files.isRegularFile(file)) {
+            return matchClass(file, nameMatcher);
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * walks only directories whose relative paths are prefixes of the qualified name
+     * @param classesDir a classes directory like <code>target/classes</code>
+     * @param qualifiedName a qualified name like <code>"my.pack.Outer.Inner"</code>
+     * @return class-files whose names derived from paths are equal to the qualified name
+     *     with replacing "$" by ".", like <code>"my/pack/Outer$Inner.class"</code>
+     * @throws IOException failure of walking
+     */
+    public Stream<Path> findClassFromClassesDir(File classesDir, String qualifiedName) throws IOException {
+        Path root = classesDir.toPath();
+        String prefix = qualifiedName + ".";
+        List<Path> files = new ArrayList<>();
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                String pack = MainFinder.getClassNameFromPath(root.relativize(dir).toString().replace(File.separatorChar, '/'));
+                if (pack.isEmpty() || prefix.startsWith(pack + ".")) {
+                    return FileVisitResult.CONTINUE;
+                } else {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                String rel = root.relativize(file).toString().replace(File.separatorChar, '/');
+                if (attrs.isRegularFile() && rel.endsWith(".class") &&
+                        MainFinder.getClassNameFromPath(rel).replace('$', '.').equals(qualifiedName)) {
+                    files.add(file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return files.stream();
+    }
+
+    public List<MainClassInfo> findMainClass(File projectDir, NameMatcher nameMatcher) {
+        List<MainClassInfo> mains = new ArrayList<>();
+        findMainClass(projectDir, nameMatcher, mains::add);
+        return mains;
     }
 
-    public List<MainClassInfo> findMainClass(File projectDir, Pattern namePattern) {
-        return getClassesDirectories(projectDir).stream()
-                .filter(File::isDirectory)
-                .map(dir -> findMainClassFromClassesDir(dir, namePattern))
-                .flatMap(l -> l.stream()
-                            .map(main -> main.withPath(projectDir)))
-                .collect(Collectors.toList());
+    /**
+     * @param projectDir the project directory
+     * @param nameMatcher the matcher or null
+     * @param consumer receives found main-classes with the path of projectDir, in the order of scanning
+     */
+    public void findMainClass(File projectDir, NameMatcher nameMatcher, Consumer<MainClassInfo> consumer) {
+        for (File dir : getClassesDirectories(projectDir)) {
+            if (dir.isDirectory()) {
+                findMainClassFromClassesDir(dir, nameMatcher,
+                        main -> consumer.accept(main.withPath(projectDir)));
+            }
+        }
     }
 
     public List<File> getClassesDirectories(File projectDir) {
         boolean canHaveTarget = !projectMayHaveNoTarget(projectDir);
         File targetDir = new File(projectDir, "target");
 
-        if (autoCompile && !targetDir.isDirectory() && canHaveTarget) {
-            compileProject(projectDir);
+        if (autoCompile && canHaveTarget) {
+            compileProjectIfChanged(projectDir);
         }
         if (!targetDir.isDirectory()) {
             log("no %s", targetDir);
@@ -465,28 +922,217 @@ public class MavenExecJava {
         }
     }
 
-    public void compileProject(File projectDir) {
+    /**
+     * runs <code>mvn compile</code> if {@link SourceFingerprint} reports changed sources, and saves the fingerprint after success.
+     *  <code>mvn test-compile</code> is used instead if test sources are changed
+     * @param projectDir the project directory, checked only once in the run
+     */
+    @SuppressWarnings("try") //the lock is only held by the block
+    public void compileProjectIfChanged(File projectDir) {
+        if (!checkedProjects.add(projectDir)) {
+            return;
+        }
+        SourceFingerprint sources = new SourceFingerprint(projectDir);
+        Map<String, String> fingerprint = sources.getFingerprint();
+        Set<String> changed = sources.getChangedRoots(fingerprint);
+        if (changed.isEmpty()) {
+            log("no changed sources: %s", projectDir);
+            return;
+        }
+        log("changed sources: %s %s", projectDir, changed);
+        try (CompileLock lock = acquireCompileLock(projectDir)) {
+            //another process may have compiled the sources while waiting
+            fingerprint = sources.getFingerprint();
+            changed = sources.getChangedRoots(fingerprint);
+            if (changed.isEmpty()) {
+                log("compiled by another process: %s", projectDir);
+                return;
+            }
+            if (incrementalCompile && compileIncrementally(projectDir, changed)) {
+                saveSourceFingerprint(projectDir, fingerprint);
+                return;
+            }
+            String goal = changed.stream().anyMatch(SourceFingerprint::isTestRoot) ? "test-compile" : "compile";
+            if (compileProject(projectDir, goal) == 0) {
+                saveSourceFingerprint(projectDir, fingerprint);
+                saveSourceLists(projectDir);
+            }
+        }
+    }
+
+    /**
+     * @param projectDir the project directory
+     * @return the lock of compilation of the project, acquired after other processes compiling the project
+     */
+    public CompileLock acquireCompileLock(File projectDir) {
+        CompileLock lock = CompileLock.acquire(projectDir.toPath());
+        log("compile lock: %s waited %s", CompileLock.getLockFile(projectDir.toPath()), lock.getWaitTime());
+        return lock;
+    }
+
+    /**
+     * compiles changed sources and their dependents by {@link IncrementalCompiler} with the cached classpath
+     * @param projectDir the project directory
+     * @param changed changed roots
+     * @return false if the project needs <code>mvn compile</code>
+     */
+    public boolean compileIncrementally(File projectDir, Set<String> changed) {
+        List<String> classpath = getClasspathFromCache(projectDir);
+        if (classpath == null) {
+            log("incremental compile: no cached classpath");
+            return false;
+        }
+        IncrementalCompiler compiler = new IncrementalCompiler(projectDir, classpath, err);
+        String reason = compiler.getUnsupportedReason(changed);
+        if (reason != null) {
+            log("incremental compile: %s", reason);
+            return false;
+        }
+        boolean test = changed.stream().anyMatch(SourceFingerprint::isTestRoot) ||
+                new File(projectDir, "target/test-classes").isDirectory();
+        Instant start = Instant.now();
+        if (!compiler.compile(test)) {
+            log("incremental compile failed: %s", compiler.getFailureReason());
+            return false;
+        }
+        if (!compiler.getCompiledSources().isEmpty()) {
+            err.println("> (javac) " + String.join(" ", compiler.getCompiledSources()));
+        }
+        log("incremental compile: %s deleted=%s resources=%s %s", compiler.getCompiledSources(),
+                compiler.getDeletedClasses(), compiler.getCopiedResources(), Duration.between(start, Instant.now()));
+        return true;
+    }
+
+    public void saveSourceFingerprint(File projectDir, Map<String, String> fingerprint) {
+        try {
+            new SourceFingerprint(projectDir).save(fingerprint);
+        } catch (Exception ex) {
+            log("error %s", ex);
+        }
+    }
+
+    /**
+     * records sources compiled by Maven, used by {@link IncrementalCompiler} for distinguishing class-files of deleted sources
+     * @param projectDir the project directory
+     */
+    public void saveSourceLists(File projectDir) {
+        try {
+            new IncrementalCompiler(projectDir, List.of(), err).saveSourceLists();
+        } catch (Exception ex) {
+            log("error %s", ex);
+        }
+    }
+
+    public int compileProject(File projectDir) {
+        return compileProject(projectDir, "compile");
+    }
+
+    /**
+     * @param projectDir the project directory
+     * @param goal <code>compile</code> or <code>test-compile</code>
+     * @return the exit code of mvn
+     */
+    public int compileProject(File projectDir, String goal) {
         List<String> command = new ArrayList<>();
         command.add(getMavenCommandName());
         command.addAll(mvnOptions);
-        command.add("compile");
-        ProcessShell.get(command)
+        command.add(goal);
+        ProcessShell<?> sh = ProcessShell.get(command)
                 .set(p -> {
                     p.directory(projectDir);
+                    setEnvironment(p);
                     p.environment().put("MAVEN_OPTS", "-Dorg.slf4j.simpleLogger.defaultLogLevel=error");
-                })
-                .setRedirectToInherit()
-                .echo().runToReturnCode();
+                });
+        echo(sh);
+        return redirectToConsole(sh).runToReturnCode();
+    }
+
+    public List<MainClassInfo> findMainClassFromClassesDir(File classesDir, NameMatcher nameMatcher) {
+        List<MainClassInfo> mains = new ArrayList<>();
+        findMainClassFromClassesDir(classesDir, nameMatcher, mains::add);
+        return mains;
     }
 
-    public List<MainClassInfo> findMainClassFromClassesDir(File classesDir, Pattern namePattern) {
-        try (Stream<Path> paths = findClassFromClassesDir(classesDir)) {
-            return paths.map(p -> matchClass(p, namePattern))
-                    .filter(Objects::nonNull)
-                    .collect(Collectors.toList());
+    /**
+     * @param classesDir a classes directory like <code>target/classes</code>
+     * @param nameMatcher the matcher or null
+     * @param consumer receives found main-classes in the order of the index or the walk, without collecting them
+     */
+    public void findMainClassFromClassesDir(File classesDir, NameMatcher nameMatcher, Consumer<MainClassInfo> consumer) {
+        if (useIndex) {
+            findMainClassFromIndex(getMainIndex(classesDir, nameMatcher), nameMatcher, consumer);
+            return;
+        }
+        List<Path> paths;
+        try (Stream<Path> ps = findClassFromClassesDir(classesDir)) {
+            paths = ps.filter(p -> !namePrefilter || matchClassPath(classesDir.toPath(), p, nameMatcher))
+                    .toList();
         } catch (Exception ex) {
             throw new RuntimeException(ex);
         }
+        log("%s: matched class-files by names: %,d", classesDir, paths.size());
+        classScanner.forEach(paths, p -> matchClass(p, nameMatcher), consumer);
+    }
+
+    /**
+     * @param classesDir a classes directory like <code>target/classes</code>
+     * @param classFile a class-file under the classesDir
+     * @param nameMatcher the matcher or null
+     * @return true if the class name derived from the relative path of classFile matches the matcher
+     */
+    public boolean matchClassPath(Path classesDir, Path classFile, NameMatcher nameMatcher) {
+        String rel = classesDir.relativize(classFile).toString().replace(File.separatorChar, '/');
+        return MainFinder.matchClassName(MainFinder.getClassNameFromPath(rel), nameMatcher);
+    }
+
+    /**
+     * loads the index of the classes directory, revalidates it and saves it if modified
+     * @param classesDir a classes directory like <code>target/classes</code>
+     * @param nameMatcher if non-null and {@link #namePrefilter}, only class-files of matched names are parsed
+     * @return the updated index
+     */
+    public MainIndex getMainIndex(File classesDir, NameMatcher nameMatcher) {
+        MainIndex index;
+        if (indexCache != null) {
+            index = indexCache.computeIfAbsent(classesDir.toPath().toAbsolutePath().normalize(),
+                    dir -> MainIndex.load(dir, classScanner));
+        } else {
+            index = MainIndex.load(classesDir.toPath(), classScanner);
+        }
+        synchronized (index) { //shared by requests of the daemon
+            try {
+                if (namePrefilter && nameMatcher != null) {
+                    index.update(name -> MainFinder.matchClassName(name, nameMatcher));
+                } else {
+                    index.update();
+                }
+            } catch (Exception ex) {
+                throw new RuntimeException(ex);
+            }
+            log("index %s: entries %,d, parsed %,d", index.getIndexFile(), index.getEntries().size(), index.getParsedCount());
+            if (index.saveIfModified()) {
+                log("index saved: %s", index.getIndexFile());
+            }
+        }
+        return index;
+    }
+
+    public List<MainClassInfo> findMainClassFromIndex(MainIndex index, NameMatcher nameMatcher) {
+        List<MainClassInfo> mains = new ArrayList<>();
+        findMainClassFromIndex(index, nameMatcher, mains::add);
+        return mains;
+    }
+
+    public void findMainClassFromIndex(MainIndex index, NameMatcher nameMatcher, Consumer<MainClassInfo> consumer) {
+        for (MainIndex.Entry e : index.getMainEntries()) {
+            int score = 1;
+            if (nameMatcher != null) {
+                score = nameMatcher.match(e.getName().replace('$', '.'));
+            }
+            if (score > 0) {
+                consumer.accept(new MainClassInfo(index.getClassesDir().resolve(e.getPath()).toFile(), e.getName(), score));
+            }
+        }
     }
 
     public Stream<Path> findClassFromClassesDir(File classesDir) throws IOException {
@@ -495,27 +1141,48 @@ public class MavenExecJava {
                 .filter(p -> p.getFileName().toString().endsWith(".class"));
     }
 
-    public MainClassInfo matchClass(Path classFile, Pattern namePattern) {
+    public MainClassInfo matchClass(Path classFile, NameMatcher nameMatcher) {
         try {
-            MainFinder finder = new MainFinder(namePattern);
-            String name = finder.matchClass(classFile);
+            MainFinder finder = new MainFinder(nameMatcher);
+            String name = classScanner.matchClass(classFile, finder);
             if (name != null) {
                 return new MainClassInfo(classFile.toFile(), name, finder.getNameMatchedScore());
             } else {
                 return null;
             }
         } catch (Exception ex) {
-            System.err.println("matchClass: " + classFile + " : " + ex);
-            ex.printStackTrace();
+            err.println("matchClass: " + classFile + " : " + ex);
+            ex.printStackTrace(err);
             return null;
         }
     }
 
     public ProcessShell<?> getCommand(File projectPath, String mainClass, List<String> args) {
         Instant commandCreationTime = Instant.now();
+        if (direct && execExec) {
+            List<String> classpath = getCachedClasspath(projectPath);
+            if (classpath != null) {
+                cdsOptions = getCdsOptions(projectPath, getJavaCommandName(), classpath);
+                return ProcessShell.get(getJavaCommandExec(classpath, mainClass, args))
+                        .set(p -> {
+                            p.directory(getFile(".").getAbsoluteFile());
+                            setEnvironment(p);
+                            if (debug) {
+                                p.environment().put("MAVEN_EXEC_DEBUG_INIT_TIME", commandCreationTime.toString());
+                            }
+                        })
+                        .setRedirectToInherit();
+            }
+            log("fallback to exec:exec");
+        }
+        if (cds) {
+            log("cds is not supported by exec:exec; the classpath starts with classes directories");
+        }
+        cdsOptions = List.of();
         return ProcessShell.get(execExec ? getMavenCommandExec(mainClass, args) : getMavenCommandExecJava(mainClass, args))
                 .set(p -> {
                     p.directory(projectPath);
+                    setEnvironment(p);
                     String mavenOpts = getMavenOpts();
                     log("MAVEN_OPTS: %s", mavenOpts);
                     p.environment().put("MAVEN_OPTS", mavenOpts);
@@ -526,6 +1193,113 @@ public class MavenExecJava {
                 .setRedirectToInherit();
     }
 
+    /**
+     * @param path a path string
+     * @return the path relative to {@link #workingDirectory} if it is set
+     */
+    public File getFile(String path) {
+        File file = new File(path);
+        if (workingDirectory == null || file.isAbsolute()) {
+            return file;
+        } else {
+            return new File(workingDirectory, path);
+        }
+    }
+
+    public void setEnvironment(ProcessBuilder builder) {
+        if (environment != System.getenv()) {
+            builder.environment().clear();
+            builder.environment().putAll(environment);
+        }
+    }
+
+    public void echo(ProcessShell<?> sh) {
+        err.println(sh.getEchoString("> ", ""));
+    }
+
+    /**
+     * @param sh a command
+     * @return the command with inheriting the console, or redirecting outputs to {@link #out} and {@link #err} if they are replaced.
+     *   it is run by {@link ProcessShell#runToReturnCode()} which waits for the tasks copying the outputs,
+     *   thus the whole outputs are written before a daemon returns the request and closes the connection
+     */
+    public ProcessShell<?> redirectToConsole(ProcessShell<?> sh) {
+        if (out == System.out && err == System.err) {
+            return sh.setRedirectToInherit();
+        } else {
+            return sh.setErrorStream(new UnclosedOutputStream(err))
+                    .setOutputStream(new UnclosedOutputStream(out));
+        }
+    }
+
+    /** an output-stream which flushes instead of closing the wrapped stream */
+    public static class UnclosedOutputStream extends FilterOutputStream {
+        public UnclosedOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+
+    /**
+     * runs the command and waits for its termination. a daemon overrides it for launching the command by a client
+     * @param sh the command from {@link #getCommand(File, String, List)}
+     * @return the exit code
+     */
+    public int launch(ProcessShell<?> sh) {
+        return sh.runToReturnCode();
+    }
+
+    /**
+     * writes the command to {@link #handoffFile} instead of launching it; the script executes the command by <code>exec</code>.
+     *  the file consists of NUL-terminated strings:
+     *  <pre>
+     *      &lt;workingDirectory&gt; &lt;NAME=VALUE&gt;... -- &lt;command&gt;...
+     *  </pre>
+     *  environment variables are only ones added or changed from {@link #environment}.
+     *  the format cannot express a variable removed from the environment of the builder:
+     *  the command inherits it from the script
+     * @param sh the command from {@link #getCommand(File, String, List)}
+     */
+    public void handoff(ProcessShell<?> sh) {
+        ProcessBuilder builder = sh.getBuilder();
+        List<String> items = new ArrayList<>();
+        items.add((builder.directory() == null ? getFile(".") : builder.directory()).getAbsolutePath());
+        getEnvironmentDiff(builder).forEach((k, v) -> items.add(k + "=" + v));
+        items.add("--");
+        items.addAll(builder.command());
+        StringBuilder buf = new StringBuilder();
+        items.forEach(i -> buf.append(i).append('\0'));
+        try {
+            Files.writeString(handoffFile.toPath(), buf);
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+        log("handoff %s", handoffFile);
+    }
+
+    /**
+     * @param builder a process-builder of a command
+     * @return environment variables of the builder which are different from {@link #environment}
+     */
+    public Map<String, String> getEnvironmentDiff(ProcessBuilder builder) {
+        Map<String, String> envDiff = new LinkedHashMap<>();
+        builder.environment().forEach((k, v) -> {
+            if (!Objects.equals(environment.get(k), v)) {
+                envDiff.put(k, v);
+            }
+        });
+        return envDiff;
+    }
+
     public String getMavenCommandName() {
         if (mvnCommand == null) {
             if (System.getProperty("os.name", "").contains("Windows")) {
@@ -537,6 +1311,201 @@ public class MavenExecJava {
         return mvnCommand;
     }
 
+    /**
+     * @param projectDir the project directory
+     * @param javaCommand the java command of the launch
+     * @param classpath the classpath, whose directories are replaced with jars as {@link #cdsClasspath}
+     * @return options for the {@link CdsArchive} of the classpath if --cds and the JDK supports it, or an empty list
+     */
+    public List<String> getCdsOptions(File projectDir, String javaCommand, List<String> classpath) {
+        cdsClasspath = null;
+        if (!cds) {
+            return List.of();
+        }
+        String release = CdsArchive.getRelease(CdsArchive.getJavaHome(javaCommand, environment));
+        if (!CdsArchive.isSupported(release)) {
+            log("cds is not supported by %s", javaCommand);
+            return List.of();
+        }
+        CdsArchive archive = new CdsArchive(projectDir);
+        Path file = archive.getArchiveFile(archive.getFingerprint(release, classpath));
+        log("cds archive %s: exists %s", file, Files.exists(file));
+        List<String> options = archive.getOptions(file);
+        cdsClasspath = archive.getClasspathForArchive(classpath);
+        return options;
+    }
+
+    /**
+     * @return the archive file of the last command, or null
+     */
+    public Path getCdsArchiveFile() {
+        return cdsOptions.stream()
+                .filter(o -> o.startsWith("-XX:SharedArchiveFile="))
+                .map(o -> Paths.get(o.substring("-XX:SharedArchiveFile=".length())))
+                .findFirst()
+                .orElse(null);
+    }
+
+    public String getJavaCommandName() {
+        if (javaCommand == null) {
+            String home = environment.get("JAVA_HOME");
+            if (home != null && !home.isEmpty()) {
+                javaCommand = Paths.get(home, "bin", "java").toString();
+            } else {
+                javaCommand = "java";
+            }
+        }
+        return javaCommand;
+    }
+
+    /**
+     * the command line equivalent to {@link #getMavenCommandExec(String, List)} without Maven.
+     *  all entries are passed by "-cp" and the working directory is the current directory, same as exec:exec.
+     * @param classpath the resolved classpath entries by {@link #getCachedClasspath(File)}
+     * @param mainClass the main class
+     * @param args arguments for the main class
+     * @return the command line of java
+     */
+    public List<String> getJavaCommandExec(List<String> classpath, String mainClass, List<String> args) {
+        List<String> command = new ArrayList<>();
+        command.add(getJavaCommandName());
+        command.addAll(jvmOptions);
+        command.addAll(cdsOptions);
+        propertySettings.stream()
+                .map(this::getPropertySetting)
+                .forEach(command::add);
+        command.add("-cp");
+        command.add(String.join(File.pathSeparator, cdsClasspath != null ? cdsClasspath : classpath));
+        command.add(mainClass);
+        command.addAll(args);
+        if (isArgumentFileNeeded(command)) {
+            Path file = ArgumentFile.write(getArgumentFileDir(), command.subList(1, command.size()));
+            log("argument file: %s", file);
+            return List.of(command.getFirst(), "@" + file);
+        }
+        return command;
+    }
+
+    /**
+     * @param command a command line
+     * @return true if --argfile or the command line is longer than {@link ArgumentFile#THRESHOLD}
+     */
+    public boolean isArgumentFileNeeded(List<String> command) {
+        return argumentFile || ArgumentFile.getLength(command) > ArgumentFile.THRESHOLD;
+    }
+
+    /**
+     * @return <code>args</code> in {@link UserDirectory#getDefault()}, whose parent is checked or created
+     */
+    public Path getArgumentFileDir() {
+        try {
+            return UserDirectory.prepare(UserDirectory.getDefault()).resolve("args");
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    /**
+     * @param projectDir the project directory
+     * @return the test-scope classpath of the project from the cache, or resolved by Maven if the cache is stale.
+     *        null if the resolution failed
+     */
+    public List<String> getCachedClasspath(File projectDir) {
+        List<String> classpath = getClasspathFromCache(projectDir);
+        if (classpath != null) {
+            return classpath;
+        }
+        ClasspathCache cache = new ClasspathCache(projectDir);
+        String fingerprint = cache.getFingerprint(mvnOptions);
+        log("classpath cache is stale: %s %s", cache.getCacheFile(), fingerprint);
+        classpath = resolveClasspath(projectDir);
+        if (classpath != null) {
+            if (classpathCache != null) {
+                classpathCache.put(fingerprint, classpath);
+            }
+            try {
+                cache.save(fingerprint, classpath);
+            } catch (Exception ex) {
+                log("classpath cache failure: %s", ex);
+            }
+        }
+        return classpath;
+    }
+
+    /**
+     * @param projectDir the project directory
+     * @return the test-scope classpath of the project from the cache in memory or the file, or null if the cache is stale
+     */
+    public List<String> getClasspathFromCache(File projectDir) {
+        ClasspathCache cache = new ClasspathCache(projectDir);
+        String fingerprint = cache.getFingerprint(mvnOptions);
+        List<String> classpath = (classpathCache == null ? null : classpathCache.get(fingerprint));
+        if (classpath != null) {
+            log("classpath in memory: %s", fingerprint);
+            return classpath;
+        }
+        classpath = cache.load(fingerprint);
+        if (classpath != null && classpathCache != null) {
+            classpathCache.put(fingerprint, classpath);
+        }
+        if (classpath != null) {
+            log("classpath cache: %s", cache.getCacheFile());
+        }
+        return classpath;
+    }
+
+    /**
+     * runs <code>mvn dependency:build-classpath</code>
+     * @param projectDir the project directory
+     * @return <code>target/test-classes</code>, <code>target/classes</code> and test-scope dependencies of the project,
+     *     or null if Maven failed
+     */
+    public List<String> resolveClasspath(File projectDir) {
+        Path outputFile = null;
+        try {
+            outputFile = Files.createTempFile("mvn-exec-classpath", ".txt");
+            List<String> command = new ArrayList<>();
+            command.add(getMavenCommandName());
+            command.addAll(mvnOptions);
+            command.add("dependency:build-classpath");
+            command.add("-Dmdep.includeScope=test");
+            command.add("-Dmdep.outputFile=" + outputFile);
+            ProcessShell<?> sh = ProcessShell.get(command)
+                    .set(p -> {
+                        p.directory(projectDir);
+                        setEnvironment(p);
+                        p.environment().put("MAVEN_OPTS", MAVEN_OPTS_LOG_LEVEL + "error");
+                    });
+            echo(sh);
+            int code = redirectToConsole(sh).runToReturnCode();
+            if (code != 0) {
+                log("dependency:build-classpath failed: %d", code);
+                return null;
+            }
+            File targetDir = new File(projectDir, "target").getAbsoluteFile();
+            List<String> classpath = new ArrayList<>();
+            classpath.add(new File(targetDir, "test-classes").getPath());
+            classpath.add(new File(targetDir, "classes").getPath());
+            for (String e : Files.readString(outputFile).split(Pattern.quote(File.pathSeparator))) {
+                if (!e.isBlank()) {
+                    classpath.add(e.trim());
+                }
+            }
+            return classpath;
+        } catch (Exception ex) {
+            log("dependency:build-classpath error: %s", ex);
+            return null;
+        } finally {
+            try {
+                if (outputFile != null) {
+                    Files.deleteIfExists(outputFile);
+                }
+            } catch (IOException ex) {
+                //ignore
+            }
+        }
+    }
+
     public List<String> getMavenCommandExec(String mainClass, List<String> args) {
         List<String> command = new ArrayList<>();
         command.add(getMavenCommandName());
@@ -544,7 +1513,7 @@ public class MavenExecJava {
         command.add("exec:exec");
         command.add("-Dexec.classpathScope=test");
         command.add("-Dexec.executable=java");
-        command.add("-Dexec.workingdir=" + new File(".").getAbsolutePath());
+        command.add("-Dexec.workingdir=" + getFile(".").getAbsolutePath());
         command.add("-Dexec.args=" + getCommandArgumentsForExec(mainClass, args));
         return command;
     }
@@ -559,6 +1528,19 @@ public class MavenExecJava {
         } catch (Exception ex) {
             log("version error: java.version=%s : %s", System.getProperty("java.version"), ex);
         }
+        if (!mp.isEmpty()) { //argument files are supported by JDK 9 or later
+            List<String> fileArgs = new ArrayList<>(jvmOptions);
+            propertySettings.stream()
+                    .map(this::getPropertySetting)
+                    .forEach(fileArgs::add);
+            fileArgs.add(mainClass);
+            fileArgs.addAll(args);
+            if (isArgumentFileNeeded(fileArgs)) {
+                Path file = ArgumentFile.write(getArgumentFileDir(), fileArgs);
+                log("argument file: %s", file);
+                return String.join(" ", cp, mp, getCommandArgumentWithoutCompletion("@" + file));
+            }
+        }
         String jvmOpts = jvmOptions.stream()
                 .map(this::getCommandArgumentWithoutCompletion)
                 .collect(Collectors.joining(" "));
@@ -615,7 +1597,7 @@ public class MavenExecJava {
     }
 
     public String getMavenOpts() {
-        String opts = System.getenv("MAVEN_OPTS");
+        String opts = environment.get("MAVEN_OPTS");
         if (opts == null) {
             opts = "";
         }
@@ -675,9 +1657,9 @@ public class MavenExecJava {
                 if (p.isAbsolute()) {
                     comp.add(path);
                 } else if (p.getNameCount() >= 1 &&
-                            Files.exists(p.getName(0))) {
+                            getFile(p.getName(0).toString()).exists()) {
                     //actually a relative path
-                    String absPath = p.toAbsolutePath().normalize().toString();
+                    String absPath = getFile(path).toPath().toAbsolutePath().normalize().toString();
                     log("complete: %s -> %s", p, absPath);
                     comp.add(absPath);
                 } else {
@@ -698,8 +1680,8 @@ public class MavenExecJava {
             String rest = path.substring(i + 1); //...=p1
             Path rp = Paths.get(rest);
             if (!rp.isAbsolute() && rp.getNameCount() >= 1 &&
-                    Files.exists(rp.getName(0))) {
-                String absPath = rp.normalize().toAbsolutePath().toString();
+                    getFile(rp.getName(0).toString()).exists()) {
+                String absPath = getFile(rest).toPath().normalize().toAbsolutePath().toString();
                 log("complete: %s -> %s", rp, absPath);
                 return path.substring(0, i) + absPath;
             } else {
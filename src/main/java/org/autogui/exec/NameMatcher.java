@@ -0,0 +1,182 @@
+package org.autogui.exec;
+
+import java.util.Arrays;
+import java.util.regex.Pattern;
+
+/**
+ * A matcher of class names equivalent to the pattern of {@link MainFinder#getPatternFromString(String)},
+ *  without regular expressions.
+ * <ul>
+ *  <li>for a query containing ".", the name must end with the query</li>
+ *  <li>otherwise, each character of the query is matched to a character of the name in order,
+ *      only non-"." characters between the matched characters of the query,
+ *      and "*" in the query allows any characters including "."</li>
+ *  <li>matched positions are the leftmost ones,
+ *      same as the groups found by backtracking of the reluctant quantifiers in the regex</li>
+ *  <li>the matching runs by dynamic programming in O(n·m) time for the name length n and the query length m</li>
+ * </ul>
+ * Unlike the regex, characters of the query are always literal; e.g. "$" or "+" never becomes a meta-character.
+ * <pre>
+ *     NameMatcher m = new NameMatcher("MMC");
+ *     int score = m.match("my.pack.MyMainClass"); //same as MainFinder.match(name, MainFinder.getPatternFromString("MMC"))
+ * </pre>
+ */
+public class NameMatcher {
+    protected String query;
+    protected boolean qualified;
+    /** matched characters of each token: the character itself and its upper-case */
+    protected char[] tokenChars;
+    protected char[] tokenUpperChars;
+    /** starBefore[k] : "*" exists between the token k-1 and k; starBefore[m] means "*" after the last token */
+    protected boolean[] starBefore;
+
+    public NameMatcher(String query) {
+        this.query = query;
+        qualified = query.contains(".");
+        if (qualified) {
+            tokenChars = new char[0];
+            tokenUpperChars = new char[0];
+            starBefore = new boolean[1];
+        } else {
+            int m = 0;
+            for (char c : query.toCharArray()) {
+                if (c != '*') {
+                    ++m;
+                }
+            }
+            tokenChars = new char[m];
+            tokenUpperChars = new char[m];
+            starBefore = new boolean[m + 1];
+            int k = 0;
+            for (char c : query.toCharArray()) {
+                if (c == '*') {
+                    starBefore[k] = true;
+                } else {
+                    char upper = Character.toUpperCase(c);
+                    tokenChars[k] = c;
+                    tokenUpperChars[k] = (Character.isUpperCase(c) || upper == c) ? c : upper;
+                    ++k;
+                }
+            }
+        }
+    }
+
+    public String getQuery() {
+        return query;
+    }
+
+    public boolean isQualified() {
+        return qualified;
+    }
+
+    /**
+     * @return the number of groups, i.e. positions returned by {@link #matchGroups(String)}
+     */
+    public int getGroupCount() {
+        return qualified ? 1 : tokenChars.length;
+    }
+
+    /**
+     * @return the equivalent regex by {@link MainFinder#getPatternFromString(String)}
+     */
+    public Pattern getPattern() {
+        return MainFinder.getPatternFromString(query);
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "(" + query + ")";
+    }
+
+    /**
+     * @param name the tested string, no "$" or "/".
+     * @return the same score as {@link MainFinder#match(String, Pattern)} with {@link #getPattern()}.
+     *      The scoring reuses arrays of {@link MainFinder#getScoreBuffer()} and allocates no objects.
+     */
+    public int match(String name) {
+        MainFinder.ScoreBuffer buffer = MainFinder.getScoreBuffer();
+        int count = matchGroups(name, buffer);
+        if (count < 0) {
+            return 0;
+        } else {
+            return MainFinder.scoreGroups(name, buffer.groups, count);
+        }
+    }
+
+    public boolean matches(String name) {
+        return matchGroups(name, MainFinder.getScoreBuffer()) >= 0;
+    }
+
+    /**
+     * @param name the tested string, no "$" or "/".
+     * @return start positions of matched groups, or null if unmatched
+     */
+    public int[] matchGroups(String name) {
+        MainFinder.ScoreBuffer buffer = MainFinder.getScoreBuffer();
+        int count = matchGroups(name, buffer);
+        return count < 0 ? null : Arrays.copyOf(buffer.groups, count);
+    }
+
+    /**
+     * @param name the tested string, no "$" or "/".
+     * @param buffer the buffer of the current thread. start positions of groups are set to {@link MainFinder.ScoreBuffer#groups}
+     * @return the number of groups, or -1 if unmatched
+     */
+    public int matchGroups(String name, MainFinder.ScoreBuffer buffer) {
+        int n = name.length();
+        if (qualified) {
+            if (name.endsWith(query)) {
+                buffer.getGroups(1)[0] = n - query.length();
+                return 1;
+            } else {
+                return -1;
+            }
+        }
+        int m = tokenChars.length;
+        if (m == 0) {
+            return 0;
+        }
+        //nextDot[j] : the smallest index >= j of "." or n
+        int[] nextDot = buffer.getNextDot(n + 1);
+        nextDot[n] = n;
+        for (int j = n - 1; j >= 0; --j) {
+            nextDot[j] = name.charAt(j) == '.' ? j : nextDot[j + 1];
+        }
+        //firstOk[k * (n + 1) + j] : the smallest index >= j where the token k can be placed with successfully matching the rest, or n
+        int w = n + 1;
+        int[] firstOk = buffer.getFirstOk(m * w);
+        for (int k = m - 1; k >= 0; --k) {
+            int row = k * w;
+            firstOk[row + n] = n;
+            for (int j = n - 1; j >= 0; --j) {
+                firstOk[row + j] = isPlaceable(name, k, j, firstOk, nextDot) ? j : firstOk[row + j + 1];
+            }
+        }
+        int[] groups = buffer.getGroups(m);
+        int pos = firstOk[0];
+        if (pos >= n) {
+            return -1;
+        }
+        groups[0] = pos;
+        for (int k = 1; k < m; ++k) {
+            pos = firstOk[k * w + pos + 1];
+            groups[k] = pos;
+        }
+        return m;
+    }
+
+    protected boolean isPlaceable(String name, int k, int j, int[] firstOk, int[] nextDot) {
+        char c = name.charAt(j);
+        if (c != tokenChars[k] && c != tokenUpperChars[k]) {
+            return false;
+        }
+        int n = name.length();
+        int m = tokenChars.length;
+        if (k == m - 1) {
+            return starBefore[m] || nextDot[j + 1] == n;
+        } else {
+            int next = firstOk[(k + 1) * (n + 1) + j + 1];
+            return next < n && (starBefore[k + 1] || next <= nextDot[j + 1]);
+        }
+    }
+}
@@ -2,10 +2,12 @@ package org.autogui.exec;
 
 import java.io.*;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.time.Duration;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
@@ -21,9 +23,16 @@ import java.util.function.Consumer;
  *  <li>it's object can be obtained by {@link #get(String...)} or {@link #get(Iterable)} </li>
  *  <li>the argument type &lt;OutType&gt; is the output type of the process which can be determined later by
  *       setting output methods like {@link #setOutputLines()} </li>
- *  <li>there are convenient methods for directly obtaining outputs with starting a process, like {@link #runToLines()} </li>
+ *  <li>there are convenient methods for directly obtaining outputs with starting a process, like {@link #runToLines()}.
+ *       methods like {@link #runToLinesAsync()} return futures without blocking the caller</li>
  *  <li>construction of process can be configured by {@link #set(Processor)}</li>
  *  <li>inputs can be set by setting input methods like {@link #setInputLines(Iterable)}</li>
+ *  <li>tasks transferring inputs and outputs run on an {@link Executor} set by {@link #setExecutor(Executor)};
+ *       the default is {@link #DEFAULT_EXECUTOR} starting a virtual thread for each task.
+ *       the input task is interrupted at the exit of the process and it no longer blocks completion of outputs.
+ *       virtual threads are daemon threads, thus blocking methods like {@link #runToReturnCode()} and {@link #startAndGet()}
+ *       wait for the tasks of outputs before returning.
+ *       a caller of {@link #start()} needs to wait for them by itself before returning from <code>main</code></li>
  *  </ul>
  * <pre>
  *     ProcessShell.get("command", "arg1", "arg2", ...)
@@ -70,11 +79,20 @@ public class ProcessShell<OutType> {
     protected List<Processor<Process>> processors = new ArrayList<>();
 
     protected ProcessorForOutput<OutType> outputProcess;
+    /** threads running tasks; a thread is removed when its task finished */
     protected List<Thread> executedThreads = Collections.synchronizedList(new ArrayList<>());
     protected List<CompletableFuture<?>> executedThreadsWaits = Collections.synchronizedList(new ArrayList<>());
 
     protected boolean waitThreads = true;
 
+    /** starts a virtual thread for each task. the thread is a daemon thread and does not keep the JVM alive */
+    public static Executor DEFAULT_EXECUTOR = task -> Thread.ofVirtual().name("process-shell").start(task);
+    /** starts a platform thread for each task, the behavior of older versions */
+    public static Executor PLATFORM_THREAD_EXECUTOR = task -> new Thread(task, "process-shell").start();
+
+    protected Executor executor = DEFAULT_EXECUTOR;
+    protected StreamTransfer transfer = StreamTransfer.DEFAULT;
+
     public static ProcessShell<?> get(String... command) {
         return new ProcessShell<>()
                 .set(b -> b.command(command));
@@ -159,10 +177,25 @@ public class ProcessShell<OutType> {
         });
     }
 
+    /**
+     * the stdin of the process is directly read from the file by {@link ProcessBuilder.Redirect#from(File)},
+     *  without a task transferring bytes
+     * @param inputFile the input file
+     * @return this
+     */
     public ProcessShell<OutType> setInputFile(Path inputFile) {
+        inputProcess = null;
+        builder.redirectInput(ProcessBuilder.Redirect.from(inputFile.toFile()));
+        return this;
+    }
+
+    /**
+     * @param inputFile the input file, transferred by a task, e.g. a file which cannot be opened by the process
+     * @return this
+     */
+    public ProcessShell<OutType> setInputFileByTransfer(Path inputFile) {
         return setInput(p -> {
-            try (InputStream input = new BufferedInputStream(
-                    Files.newInputStream(inputFile));
+            try (InputStream input = Files.newInputStream(inputFile);
                  OutputStream out = p.getOutputStream()) {
                 transfer(input, out);
             }
@@ -177,15 +210,28 @@ public class ProcessShell<OutType> {
         });
     }
 
+    /**
+     * @param input the source
+     * @param out the destination
+     * @throws IOException an error of the streams
+     * @see StreamTransfer#transfer(InputStream, OutputStream)
+     */
     public void transfer(InputStream input, OutputStream out) throws IOException {
-        byte[] buffer = new byte[8192];
-        while (true) {
-            int len = input.read(buffer);
-            if (len < 0) {
-                break;
-            }
-            out.write(buffer, 0, len);
-        }
+        transfer.transfer(input, out);
+    }
+
+    /**
+     * @param transfer the engine of transferring streams, e.g. an engine with larger buffers for high-throughput outputs.
+     *                 the default is {@link StreamTransfer#DEFAULT} shared by shells
+     * @return this
+     */
+    public ProcessShell<OutType> setTransfer(StreamTransfer transfer) {
+        this.transfer = transfer;
+        return this;
+    }
+
+    public StreamTransfer getTransfer() {
+        return transfer;
     }
 
     public ProcessShell<OutType> setInput(Processor<Process> inputProcess) {
@@ -207,18 +253,38 @@ public class ProcessShell<OutType> {
 
     public ProcessShell<List<String>> setOutputLines() {
         return setOutput((p, target) -> {
-                try (BufferedReader reader = new BufferedReader(
-                        new InputStreamReader(p.getInputStream(), encoding))) {
+                try (InputStream in = p.getInputStream()) {
                     List<String> list = new ArrayList<>();
-                    String line;
-                    while ((line = reader.readLine()) != null) {
-                        list.add(line);
-                    }
+                    getLineSplitter().splitToStrings(in, list::add);
                     target.accept(list);
                 }
             });
     }
 
+    /**
+     * @param lines receives each line of the output as a view reused for subsequent lines; see {@link LineSplitter}
+     * @return this, whose result is the number of lines
+     */
+    public ProcessShell<Long> setOutputLineViews(LineSplitter.LineProcessor<CharSequence> lines) {
+        return setOutput((p, target) -> {
+            try (InputStream in = p.getInputStream()) {
+                long[] count = new long[1];
+                getLineSplitter().split(in, line -> {
+                    ++count[0];
+                    lines.process(line);
+                });
+                target.accept(count[0]);
+            }
+        });
+    }
+
+    /**
+     * @return a new splitter with {@link #getEncoding()} and {@link #getTransfer()}
+     */
+    public LineSplitter getLineSplitter() {
+        return new LineSplitter(encoding, transfer);
+    }
+
     public ProcessShell<String> setOutputString() {
         return setOutput((p, target) -> {
             try (InputStream in = p.getInputStream()) {
@@ -241,12 +307,41 @@ public class ProcessShell<OutType> {
         });
     }
 
+    /**
+     * the stdout of the process is directly written to the file by {@link ProcessBuilder.Redirect#to(File)},
+     *  without a task transferring bytes. the result is completed after the exit of the process
+     * @param outFile the output file, truncated
+     * @return this
+     */
     public ProcessShell<Path> setOutputFile(Path outFile) {
+        return setOutputFileRedirect(outFile, ProcessBuilder.Redirect.to(outFile.toFile()));
+    }
+
+    /**
+     * @param outFile the output file, appended by {@link ProcessBuilder.Redirect#appendTo(File)}
+     * @return this
+     */
+    public ProcessShell<Path> setOutputFileAppend(Path outFile) {
+        return setOutputFileRedirect(outFile, ProcessBuilder.Redirect.appendTo(outFile.toFile()));
+    }
+
+    protected ProcessShell<Path> setOutputFileRedirect(Path outFile, ProcessBuilder.Redirect redirect) {
+        ProcessShell<Path> newThis = setOutput((p, dest) ->
+                p.onExit().thenRunAsync(() -> dest.accept(outFile), executor));
+        newThis.builder.redirectOutput(redirect);
+        return newThis;
+    }
+
+    /**
+     * @param outFile the output file, transferred by a task
+     * @return this
+     */
+    public ProcessShell<Path> setOutputFileByTransfer(Path outFile) {
         return setOutput((p, dest) -> {
             try (InputStream in = p.getInputStream();
-                OutputStream out = new BufferedOutputStream(
-                        Files.newOutputStream(outFile))) {
-                transfer(in, out);
+                 FileChannel out = FileChannel.open(outFile,
+                         StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                transfer.transfer(in, out);
             } finally {
                 dest.accept(outFile);
             }
@@ -273,12 +368,8 @@ public class ProcessShell<OutType> {
     }
 
     public void transferLinesQueue(InputStream src, BlockingQueue<String> dst) throws IOException, InterruptedException {
-        try (BufferedReader in = new BufferedReader(
-                new InputStreamReader(src, getEncoding()))) {
-            String line;
-            while ((line = in.readLine()) != null) {
-                dst.put(line);
-            }
+        try (src) {
+            getLineSplitter().splitToStrings(src, dst::put);
         } finally {
             dst.put("\n");
         }
@@ -334,25 +425,47 @@ public class ProcessShell<OutType> {
 
     ///////////////////
 
+    /**
+     * the stderr of the process is directly written to the file by {@link ProcessBuilder.Redirect#to(File)},
+     *  without a task transferring bytes
+     * @param errorFile the error file, truncated
+     * @return this
+     */
     public ProcessShell<OutType> setErrorFile(Path errorFile) {
+        errorProcess = null;
+        builder.redirectError(ProcessBuilder.Redirect.to(errorFile.toFile()));
+        return this;
+    }
+
+    /**
+     * @param errorFile the error file, appended by {@link ProcessBuilder.Redirect#appendTo(File)}
+     * @return this
+     */
+    public ProcessShell<OutType> setErrorFileAppend(Path errorFile) {
+        errorProcess = null;
+        builder.redirectError(ProcessBuilder.Redirect.appendTo(errorFile.toFile()));
+        return this;
+    }
+
+    /**
+     * @param errorFile the error file, transferred by a task
+     * @return this
+     */
+    public ProcessShell<OutType> setErrorFileByTransfer(Path errorFile) {
         return setError((p) -> {
-            try (OutputStream out = new BufferedOutputStream(
-                    Files.newOutputStream(errorFile));
+            try (FileChannel out = FileChannel.open(errorFile,
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
                  InputStream in = p.getErrorStream()) {
-                transfer(in, out);
+                transfer.transfer(in, out);
             }
         });
     }
 
     public ProcessShell<OutType> setErrorLines(Consumer<Iterable<String>> lines) {
         return setError(p -> {
-            try (BufferedReader reader = new BufferedReader(
-                    new InputStreamReader(p.getErrorStream(), getEncoding()))) {
+            try (InputStream in = p.getErrorStream()) {
                 List<String> list = new ArrayList<>();
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    list.add(line);
-                }
+                getLineSplitter().splitToStrings(in, list::add);
                 lines.accept(list);
             }
         });
@@ -385,18 +498,26 @@ public class ProcessShell<OutType> {
 
     public ProcessShell<OutType> setErrorLine(boolean receiveEnd, Consumer<String> queue) {
         return setError((p) -> {
-            try (BufferedReader reader = new BufferedReader(
-                    new InputStreamReader(p.getErrorStream(), getEncoding()))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    queue.accept(line);
-                }
+            try (InputStream in = p.getErrorStream()) {
+                getLineSplitter().splitToStrings(in, queue::accept);
             } finally {
                 queue.accept("\n");
             }
         });
     }
 
+    /**
+     * @param lines receives each line of the error output as a view reused for subsequent lines; see {@link LineSplitter}
+     * @return this
+     */
+    public ProcessShell<OutType> setErrorLineViews(LineSplitter.LineProcessor<CharSequence> lines) {
+        return setError((p) -> {
+            try (InputStream in = p.getErrorStream()) {
+                getLineSplitter().split(in, lines);
+            }
+        });
+    }
+
     public ProcessShell<OutType> setErrorLinesQueue(BlockingQueue<String> queue) {
         return setError((p) ->
                 transferLinesQueue(p.getErrorStream(), queue));
@@ -416,13 +537,40 @@ public class ProcessShell<OutType> {
         return this;
     }
 
+    /**
+     * @param executor the executor of tasks for inputs, outputs and processors, e.g. a fixed thread-pool shared by shells.
+     *                 each task blocks until the end of its stream,
+     *                 thus the executor needs to be able to run all tasks of running processes at the same time.
+     *                 threads of {@link #DEFAULT_EXECUTOR} are daemon threads unlike {@link #PLATFORM_THREAD_EXECUTOR};
+     *                 blocking methods like {@link #runToReturnCode()} wait for tasks of outputs,
+     *                 but after {@link #start()}, the JVM can exit before they write the tail of the outputs to a stream or a file
+     *                 if the caller returns from <code>main</code> without waiting for them
+     * @return this
+     */
+    public ProcessShell<OutType> setExecutor(Executor executor) {
+        this.executor = executor;
+        return this;
+    }
+
+    public Executor getExecutor() {
+        return executor;
+    }
+
     ///////////////////
 
+    /**
+     * starts the process and tasks of the input, the error-output and processors, without waiting for them.
+     *  with {@link #DEFAULT_EXECUTOR}, the tasks run on daemon threads: the caller needs to wait for them,
+     *  e.g. by {@link #getExecutedThreadsWaitsFuture()}, before returning from <code>main</code>,
+     *  otherwise the tail of outputs written to a stream or a file can be lost at the exit of the JVM
+     * @return the started process
+     */
     public Process start() {
         try {
             Process p = builder.start();
             if (inputProcess != null) {
-                executeTask(true, () -> processInput(p));
+                Task input = executeTask(true, () -> processInput(p));
+                p.onExit().thenRun(() -> cancelInput(p, input));
             }
             if (errorProcess != null) {
                 executeTask(true, () -> processError(p));
@@ -483,7 +631,7 @@ public class ProcessShell<OutType> {
         } catch (Exception ex) {
             throw new RuntimeException(ex);
         }
-        return startWaitForThread(p);
+        return withTasks(startWaitForThread(p));
     }
 
     public CompletableFuture<BlockingQueue<String>> startToLinesQueue() {
@@ -498,26 +646,50 @@ public class ProcessShell<OutType> {
         return retLs;
     }
 
+    /**
+     * @param p the process
+     * @return the exit code by {@link Process#onExit()} without a thread waiting for the process
+     */
     protected CompletableFuture<Integer> startWaitForThread(Process p) {
-        CompletableFuture<Integer> retCode = new CompletableFuture<>();
-        executeTask(true, () -> {
-            try {
-                retCode.complete((Integer) p.waitFor());
-            } catch (Throwable ex) {
-                retCode.completeExceptionally(ex);
-            }
-        });
+        CompletableFuture<Integer> retCode = p.onExit().thenApply(Process::exitValue);
+        executedThreadsWaits.add(retCode);
         return retCode;
     }
 
+    /**
+     * the input task may block by reading its source (e.g. stdin) after the process exited.
+     * it interrupts the task and closes the stdin of the process,
+     *  and completes the task without waiting for the thread.
+     *  the thread remains blocked if the source is not interruptible like {@link System#in}
+     * @param p the exited process
+     * @param input the input task
+     */
+    protected void cancelInput(Process p, Task input) {
+        input.cancel();
+        try {
+            p.getOutputStream().close();
+        } catch (IOException ex) {
+            //already closed
+        }
+    }
+
 
+    /**
+     * starts the process and waits for its exit and the output.
+     *  the error-output and other tasks are also waited unless {@link #setWaitThreads(boolean)} is false
+     * @return the output
+     */
     public OutType startAndGet() {
         Process p = start();
         try {
             CompletableFuture<OutType> dest = startDestinationThread(p);
             p.waitFor();
 
-            return dest.get();
+            OutType out = dest.get();
+            if (!waitThreads) {
+                waitTasks(dest);
+            }
+            return out;
         } catch (Exception ex) {
             throw new RuntimeException(ex);
         }
@@ -529,24 +701,66 @@ public class ProcessShell<OutType> {
         return dest;
     }
 
-    protected void executeTask(boolean includeWaits, Runnable r) {
-        if (includeWaits) { //it creates an CompletableFuture and add to the list; the future can be used for synchronize processes
-            CompletableFuture<?> tf = new CompletableFuture<>();
-            Thread t = new Thread(() -> {
-                try {
-                    r.run();
-                    tf.complete(null);
-                } catch (Throwable ex) {
-                    tf.completeExceptionally(ex);
+    protected Task executeTask(boolean includeWaits, Runnable r) {
+        Task task = new Task(r);
+        if (includeWaits) { //adds the future to the list; the future can be used for synchronize processes
+            executedThreadsWaits.add(task.getFuture());
+        } //otherwise, the task is used for the last output
+        try {
+            executor.execute(task);
+        } catch (RuntimeException ex) {
+            task.getFuture().completeExceptionally(ex);
+            throw ex;
+        }
+        return task;
+    }
+
+    /**
+     * a task running on {@link #executor}, registering its thread to {@link #executedThreads} while running
+     */
+    public class Task implements Runnable {
+        protected Runnable body;
+        protected CompletableFuture<Void> future = new CompletableFuture<>();
+        protected volatile Thread thread;
+        protected volatile boolean cancelled;
+
+        public Task(Runnable body) {
+            this.body = body;
+        }
+
+        public CompletableFuture<Void> getFuture() {
+            return future;
+        }
+
+        @Override
+        public void run() {
+            thread = Thread.currentThread();
+            executedThreads.add(thread);
+            try {
+                if (!cancelled) {
+                    body.run();
                 }
-            });
-            executedThreadsWaits.add(tf);
-            executedThreads.add(t);
-            t.start();
-        } else { //the task is used for the last output
-            Thread t = new Thread(r);
-            executedThreads.add(t);
-            t.start();
+                future.complete(null);
+            } catch (Throwable ex) {
+                if (cancelled) {
+                    future.complete(null);
+                } else {
+                    future.completeExceptionally(ex);
+                }
+            } finally {
+                executedThreads.remove(thread);
+                thread = null;
+            }
+        }
+
+        /** interrupts the running thread and completes the future */
+        public void cancel() {
+            cancelled = true;
+            Thread t = thread;
+            if (t != null) {
+                t.interrupt();
+            }
+            future.complete(null);
         }
     }
 
@@ -628,16 +842,38 @@ public class ProcessShell<OutType> {
         }
     }
 
+    /**
+     * starts the process and waits for its exit, the output task and other tasks, e.g. the error-output to a stream
+     * @return the exit code of the process
+     */
     public int runToReturnCode() {
         Process p = start();
         try {
-            startDestinationThread(p);
-            return p.waitFor();
+            CompletableFuture<OutType> dest = startDestinationThread(p);
+            int code = p.waitFor();
+            waitTasks(dest);
+            return code;
         } catch (Exception ex) {
             throw new RuntimeException(ex);
         }
     }
 
+    /**
+     * waits for the completion of the output and other tasks.
+     *  tasks of {@link #DEFAULT_EXECUTOR} run on daemon threads,
+     *  thus a blocking method needs to wait for them before returning, otherwise the JVM can exit before the end of the outputs.
+     *  a failure of a task is ignored, as the caller only requires the exit code
+     * @param dest the output task
+     * @throws InterruptedException interrupted while waiting
+     */
+    protected void waitTasks(CompletableFuture<?> dest) throws InterruptedException {
+        try {
+            CompletableFuture.allOf(dest, getExecutedThreadsWaitsFuture()).get();
+        } catch (ExecutionException ex) {
+            //a failed task is also completed
+        }
+    }
+
     public List<String> runToLines() {
         return setOutputLines().startAndGet();
     }
@@ -654,6 +890,66 @@ public class ProcessShell<OutType> {
         return setOutputLinesQueue().startAndGet();
     }
 
+    ///////////////////
+
+    /**
+     * starts the process and returns immediately.
+     *  unlike {@link #startToString()} and so on, it never waits for the process on the caller thread;
+     *  the result is composed from the output task and {@link Process#onExit()}
+     * <pre>
+     *     List&lt;CompletableFuture&lt;String&gt;&gt; outs = commands.stream()
+     *         .map(c -&gt; ProcessShell.get(c).runToStringAsync())
+     *         .toList();
+     *     CompletableFuture.allOf(outs.toArray(new CompletableFuture&lt;?&gt;[0]))
+     *         .thenRun(...);
+     * </pre>
+     * @return the output completed after the exit of the process
+     */
+    public CompletableFuture<OutType> runAsync() {
+        Process p = start();
+        return startDestinationThread(p)
+                .thenCombine(p.onExit(), (out, exited) -> out);
+    }
+
+    /**
+     * @return the exit code completed after the exit of the process and the end of the output and other tasks
+     */
+    public CompletableFuture<Integer> runToReturnCodeAsync() {
+        Process p = start();
+        CompletableFuture<OutType> dest = startDestinationThread(p);
+        return withTasks(startWaitForThread(p))
+                .thenCombine(dest, (code, out) -> code);
+    }
+
+    /**
+     * @param retCode the exit code
+     * @return the exit code completed after also the end of other tasks, even if some of them failed
+     */
+    protected CompletableFuture<Integer> withTasks(CompletableFuture<Integer> retCode) {
+        return retCode.thenCombine(getExecutedThreadsWaitsFuture().handle((v, ex) -> null), (code, v) -> code);
+    }
+
+    public CompletableFuture<List<String>> runToLinesAsync() {
+        return setOutputLines().runAsync();
+    }
+
+    public CompletableFuture<String> runToStringAsync() {
+        return setOutputString().runAsync();
+    }
+
+    public CompletableFuture<byte[]> runToBytesAsync() {
+        return setOutputBytes().runAsync();
+    }
+
+    /**
+     * @return the queue completed at the start of reading lines, before the exit of the process.
+     *    the end of lines is the element "\n" as {@link #runToLinesQueue()}
+     */
+    public CompletableFuture<BlockingQueue<String>> runToLinesQueueAsync() {
+        ProcessShell<BlockingQueue<String>> ls = setOutputLinesQueue();
+        return ls.startDestinationThread(ls.start());
+    }
+
     public void processInput(Process p) {
         processProcessor(p, inputProcess);
     }
@@ -693,6 +989,11 @@ public class ProcessShell<OutType> {
         processProcessor(p, errorProcess);
     }
 
+    /**
+     * @return threads still running tasks.
+     *  the input task is interrupted at the exit of the process, but a task blocked on a non-interruptible source,
+     *  e.g. reading {@link System#in}, remains running and listed until the source returns data or ends
+     */
     public List<Thread> getExecutedThreads() {
         return executedThreads;
     }
@@ -0,0 +1,183 @@
+package org.autogui.exec;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * A fingerprint of sources of a project for skipping or triggering compilation, saved as <code>target/.mvn-exec-sources</code>.
+ * <ul>
+ *  <li>each source root ({@link #MAIN_ROOTS} and {@link #TEST_ROOTS}, and <code>pom.xml</code>) has a hash of
+ *      relative paths, sizes and last-modified times of its files; added, deleted, modified or touched files change the hash</li>
+ *  <li>{@link #save(Map)} records the fingerprint taken before a successful compilation.
+ *      {@link #getChangedRoots(Map)} compares the current fingerprint with the saved one</li>
+ *  <li>without a saved fingerprint (e.g. the project was compiled by Maven directly),
+ *      sources are compared with the newest class-file in <code>target/classes</code> and <code>target/test-classes</code></li>
+ * </ul>
+ * <pre>
+ *     SourceFingerprint sources = new SourceFingerprint(projectDir);
+ *     Map&lt;String, String&gt; fp = sources.getFingerprint();
+ *     if (!sources.getChangedRoots(fp).isEmpty() &amp;&amp; compile() == 0) {
+ *         sources.save(fp);
+ *     }
+ * </pre>
+ */
+public class SourceFingerprint {
+    public static String FINGERPRINT_FILE_NAME = ".mvn-exec-sources";
+    public static String FINGERPRINT_HEADER = "mvn-exec-sources 1";
+    public static List<String> MAIN_ROOTS = List.of("pom.xml", "src/main/java", "src/main/resources");
+    public static List<String> TEST_ROOTS = List.of("src/test/java", "src/test/resources");
+
+    protected File projectDir;
+    protected Path fingerprintFile;
+
+    public SourceFingerprint(File projectDir) {
+        this.projectDir = projectDir;
+        this.fingerprintFile = projectDir.toPath().resolve("target").resolve(FINGERPRINT_FILE_NAME);
+    }
+
+    public Path getFingerprintFile() {
+        return fingerprintFile;
+    }
+
+    public static boolean isTestRoot(String root) {
+        return TEST_ROOTS.contains(root);
+    }
+
+    /**
+     * @return root names to hashes of existing roots, in the order of {@link #MAIN_ROOTS} and {@link #TEST_ROOTS}
+     */
+    public Map<String, String> getFingerprint() {
+        Map<String, String> fp = new LinkedHashMap<>();
+        Stream.concat(MAIN_ROOTS.stream(), TEST_ROOTS.stream()).forEach(root -> {
+            Path dir = projectDir.toPath().resolve(root);
+            if (Files.exists(dir)) {
+                fp.put(root, getHash(dir));
+            }
+        });
+        return fp;
+    }
+
+    public static String getHash(Path root) {
+        try (Stream<Path> files = Files.walk(root)) {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            files.filter(Files::isRegularFile)
+                    .sorted()
+                    .forEachOrdered(p -> {
+                        try {
+                            BasicFileAttributes attrs = Files.readAttributes(p, BasicFileAttributes.class);
+                            md.update((root.relativize(p) + "\t" + attrs.size() + "\t" + attrs.lastModifiedTime().toMillis() + "\n")
+                                    .getBytes(StandardCharsets.UTF_8));
+                        } catch (IOException ex) {
+                            throw new RuntimeException(ex);
+                        }
+                    });
+            return HexFormat.of().formatHex(md.digest());
+        } catch (Exception ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    /**
+     * @return the saved fingerprint, or null if no file
+     */
+    public Map<String, String> load() {
+        if (!Files.isRegularFile(fingerprintFile)) {
+            return null;
+        }
+        try {
+            List<String> lines = Files.readAllLines(fingerprintFile, StandardCharsets.UTF_8);
+            if (lines.isEmpty() || !lines.getFirst().equals(FINGERPRINT_HEADER)) {
+                return null;
+            }
+            Map<String, String> fp = new LinkedHashMap<>();
+            for (String line : lines.subList(1, lines.size())) {
+                int tab = line.indexOf('\t');
+                if (tab > 0) {
+                    fp.put(line.substring(0, tab), line.substring(tab + 1));
+                }
+            }
+            return fp;
+        } catch (Exception ex) {
+            return null;
+        }
+    }
+
+    /**
+     * @param fingerprint the current fingerprint
+     * @return roots changed from the saved fingerprint, including added and removed roots.
+     *     without a saved fingerprint, roots having files newer than the newest class-file
+     */
+    public Set<String> getChangedRoots(Map<String, String> fingerprint) {
+        Map<String, String> saved = load();
+        Set<String> changed = new LinkedHashSet<>();
+        if (saved == null) {
+            long classTime = getNewestTime(projectDir.toPath().resolve("target/classes"), projectDir.toPath().resolve("target/test-classes"));
+            for (String root : fingerprint.keySet()) {
+                if (getNewestTime(projectDir.toPath().resolve(root)) > classTime) {
+                    changed.add(root);
+                }
+            }
+        } else {
+            fingerprint.forEach((root, hash) -> {
+                if (!hash.equals(saved.get(root))) {
+                    changed.add(root);
+                }
+            });
+            saved.keySet().stream()
+                    .filter(root -> !fingerprint.containsKey(root))
+                    .forEach(changed::add);
+        }
+        return changed;
+    }
+
+    /**
+     * @param paths files or directories
+     * @return the newest last-modified time of regular files under the paths, or {@link Long#MIN_VALUE}
+     */
+    public static long getNewestTime(Path... paths) {
+        long time = Long.MIN_VALUE;
+        for (Path path : paths) {
+            if (!Files.exists(path)) {
+                continue;
+            }
+            try (Stream<Path> files = Files.walk(path)) {
+                time = Math.max(time, files.filter(Files::isRegularFile)
+                        .mapToLong(p -> p.toFile().lastModified())
+                        .max().orElse(Long.MIN_VALUE));
+            } catch (IOException ex) {
+                throw new RuntimeException(ex);
+            }
+        }
+        return time;
+    }
+
+    public void save(Map<String, String> fingerprint) throws IOException {
+        Path dir = fingerprintFile.getParent();
+        Files.createDirectories(dir);
+        Path tmp = Files.createTempFile(dir, fingerprintFile.getFileName().toString(), ".tmp");
+        try {
+            try (BufferedWriter w = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                w.write(FINGERPRINT_HEADER);
+                w.write('\n');
+                for (Map.Entry<String, String> e : fingerprint.entrySet()) {
+                    w.write(e.getKey() + "\t" + e.getValue());
+                    w.write('\n');
+                }
+            }
+            try {
+                Files.move(tmp, fingerprintFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(tmp, fingerprintFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package org.autogui.exec;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A transfer engine of streams of processes, shared by {@link ProcessShell}s.
+ * <ul>
+ *  <li>buffers of <code>bufferSize</code> are pooled up to <code>maxPooledBuffers</code> and reused by transfers of any shells;
+ *      a transfer borrows a buffer from the pool or allocates a new one, and returns it at the end</li>
+ *  <li>if the destination is a {@link FileChannel} of a regular file, opened by the caller like file outputs of {@link ProcessShell},
+ *      bytes are transferred by {@link FileChannel#transferFrom(ReadableByteChannel, long, long)}.
+ *      an {@link OutputStream} is always copied through a buffer, even a {@link FileOutputStream}:
+ *      it might be a pipe or a terminal, whose channel cannot seek</li>
+ *  <li>transferred bytes, elapsed time and the number of transfers are counted for {@link #getMetrics()}</li>
+ *  <li>buffers are heap arrays because sources are {@link InputStream}s of processes;
+ *      a direct buffer would be copied to an array by the stream anyway</li>
+ * </ul>
+ * <pre>
+ *     StreamTransfer transfer = new StreamTransfer(256 * 1024, 16);
+ *     ProcessShell.get(...).setTransfer(transfer).setOutputStream(out).runToReturnCode();
+ *     System.err.println(transfer.getMetrics());
+ * </pre>
+ */
+public class StreamTransfer {
+    public static int DEFAULT_BUFFER_SIZE = 64 * 1024;
+    public static int DEFAULT_MAX_POOLED_BUFFERS = 64;
+    /** the engine used by shells by default */
+    public static StreamTransfer DEFAULT = new StreamTransfer(DEFAULT_BUFFER_SIZE, DEFAULT_MAX_POOLED_BUFFERS);
+
+    protected int bufferSize;
+    protected BlockingQueue<byte[]> pool;
+    protected LongAdder transferredBytes = new LongAdder();
+    protected LongAdder transferNanos = new LongAdder();
+    protected LongAdder transfers = new LongAdder();
+    protected LongAdder allocatedBuffers = new LongAdder();
+
+    /**
+     * @param bufferSize the size of a buffer, also the maximum size of a chunk of {@link FileChannel#transferFrom(ReadableByteChannel, long, long)}
+     * @param maxPooledBuffers the number of buffers kept in the pool
+     */
+    public StreamTransfer(int bufferSize, int maxPooledBuffers) {
+        this.bufferSize = bufferSize;
+        this.pool = new ArrayBlockingQueue<>(Math.max(1, maxPooledBuffers));
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public byte[] acquire() {
+        byte[] buffer = pool.poll();
+        if (buffer == null) {
+            allocatedBuffers.increment();
+            buffer = new byte[bufferSize];
+        }
+        return buffer;
+    }
+
+    /** @param buffer a buffer obtained by {@link #acquire()}; dropped if the pool is full */
+    public void release(byte[] buffer) {
+        pool.offer(buffer);
+    }
+
+    /**
+     * @param in the source, not closed
+     * @param out the destination, not closed
+     * @return transferred bytes
+     */
+    public long transfer(InputStream in, OutputStream out) throws IOException {
+        long start = System.nanoTime();
+        long total = 0;
+        byte[] buffer = acquire();
+        try {
+            int len;
+            while ((len = in.read(buffer)) >= 0) {
+                out.write(buffer, 0, len);
+                total += len;
+            }
+        } finally {
+            release(buffer);
+            count(total, start);
+        }
+        return total;
+    }
+
+    /**
+     * @param in the source, not closed
+     * @param out the destination written from its current position, not closed. it must be seekable, i.e. a regular file
+     * @return transferred bytes
+     */
+    public long transfer(InputStream in, FileChannel out) throws IOException {
+        long start = System.nanoTime();
+        long total = 0;
+        try {
+            ReadableByteChannel src = Channels.newChannel(in);
+            long position = out.position();
+            long n;
+            //for a blocking source, transferFrom returns 0 only at the end
+            while ((n = out.transferFrom(src, position, bufferSize)) > 0) {
+                position += n;
+                total += n;
+            }
+            out.position(position);
+        } finally {
+            count(total, start);
+        }
+        return total;
+    }
+
+    protected void count(long bytes, long startNanos) {
+        transferredBytes.add(bytes);
+        transferNanos.add(System.nanoTime() - startNanos);
+        transfers.increment();
+    }
+
+    public long getTransferredBytes() {
+        return transferredBytes.sum();
+    }
+
+    /** @return the sum of elapsed time of transfers, including waiting for sources */
+    public long getTransferNanos() {
+        return transferNanos.sum();
+    }
+
+    public long getTransfers() {
+        return transfers.sum();
+    }
+
+    public long getAllocatedBuffers() {
+        return allocatedBuffers.sum();
+    }
+
+    /** @return transferred bytes per second of elapsed time of transfers */
+    public double getBytesPerSecond() {
+        long nanos = getTransferNanos();
+        return nanos == 0 ? 0 : getTransferredBytes() * 1_000_000_000.0 / nanos;
+    }
+
+    public String getMetrics() {
+        return String.format("transfers=%,d bytes=%,d time=%,dms throughput=%,.1fMB/s buffers=%,d(size %,d)",
+                getTransfers(), getTransferredBytes(), getTransferNanos() / 1_000_000L,
+                getBytesPerSecond() / (1024 * 1024), getAllocatedBuffers(), bufferSize);
+    }
+
+    public void resetMetrics() {
+        transferredBytes.reset();
+        transferNanos.reset();
+        transfers.reset();
+    }
+}
@@ -0,0 +1,100 @@
+package org.autogui.exec;
+
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * A directory only accessible by the current user, shared by processes of mvn-exec of the user:
+ *  the socket of {@link MavenExecDaemon}, classes of workers of {@link JvmPool} and {@link ArgumentFile}s.
+ * <ul>
+ *  <li>{@link #getDefault()} is <code>$XDG_RUNTIME_DIR/mvn-exec</code> if the env is set,
+ *      otherwise <code>$TMPDIR/mvn-exec-$USER</code>, or <code>java.io.tmpdir</code> instead of <code>$TMPDIR</code> if it is not set.
+ *      the script <code>mvn-exec</code> follows the same rule</li>
+ *  <li>the directory is usually under a world-writable directory, thus another user can create it in advance.
+ *      {@link #prepare(Path)} creates a directory with <code>rwx------</code>,
+ *      and rejects an existing one which is a symbolic link, is not owned by the user, or has any permission of the group or others</li>
+ *  <li>{@link #check(Path)} rejects such a file in the directory in the same way</li>
+ * </ul>
+ * <pre>
+ *     Path socket = UserDirectory.prepare(UserDirectory.getDefault()).resolve("daemon.sock");
+ * </pre>
+ */
+public class UserDirectory {
+    public static String NAME = "mvn-exec";
+    public static Set<PosixFilePermission> OWNER_PERMISSIONS = EnumSet.of(
+            PosixFilePermission.OWNER_READ, PosixFilePermission.OWNER_WRITE, PosixFilePermission.OWNER_EXECUTE);
+
+    /**
+     * @return <code>$XDG_RUNTIME_DIR/mvn-exec</code> or <code>$TMPDIR/mvn-exec-$USER</code>; not created
+     */
+    public static Path getDefault() {
+        String runtimeDir = System.getenv("XDG_RUNTIME_DIR");
+        if (runtimeDir != null && !runtimeDir.isEmpty()) {
+            return Paths.get(runtimeDir, NAME);
+        }
+        String tmpDir = System.getenv("TMPDIR");
+        if (tmpDir == null || tmpDir.isEmpty()) {
+            tmpDir = System.getProperty("java.io.tmpdir");
+        }
+        return Paths.get(tmpDir, NAME + "-" + System.getProperty("user.name"));
+    }
+
+    /**
+     * @param dir the directory, created with its parents if missing
+     * @return the directory
+     * @throws IOException failure of creating, or the existing directory is not private to the user
+     */
+    public static Path prepare(Path dir) throws IOException {
+        if (!Files.exists(dir, LinkOption.NOFOLLOW_LINKS)) {
+            Path parent = dir.toAbsolutePath().getParent();
+            if (parent != null && !Files.isDirectory(parent)) {
+                Files.createDirectories(parent);
+            }
+            try {
+                Files.createDirectory(dir, PosixFilePermissions.asFileAttribute(EnumSet.copyOf(OWNER_PERMISSIONS)));
+            } catch (UnsupportedOperationException ex) {
+                Files.createDirectory(dir); //non-POSIX file-system
+            } catch (FileAlreadyExistsException ex) {
+                //created by another process at the same time: checked below
+            }
+        }
+        check(dir);
+        if (!Files.isDirectory(dir, LinkOption.NOFOLLOW_LINKS)) {
+            throw new IOException("not a directory: " + dir);
+        }
+        return dir;
+    }
+
+    /**
+     * @param path an existing file or directory
+     * @throws IOException the path is a symbolic link, not owned by the current user, or accessible by the group or others
+     */
+    public static void check(Path path) throws IOException {
+        if (Files.isSymbolicLink(path)) {
+            throw new IOException("symbolic link: " + path);
+        }
+        UserPrincipal owner = Files.getOwner(path, LinkOption.NOFOLLOW_LINKS);
+        UserPrincipal user = path.getFileSystem().getUserPrincipalLookupService()
+                .lookupPrincipalByName(System.getProperty("user.name"));
+        if (!owner.equals(user)) {
+            throw new IOException("not owned by " + user.getName() + ": " + path + " (owner: " + owner.getName() + ")");
+        }
+        try {
+            Set<PosixFilePermission> perms = Files.getPosixFilePermissions(path, LinkOption.NOFOLLOW_LINKS);
+            if (!OWNER_PERMISSIONS.containsAll(perms)) {
+                throw new IOException("accessible by others: " + path + " (" + PosixFilePermissions.toString(perms) + ")");
+            }
+        } catch (UnsupportedOperationException ex) {
+            //non-POSIX file-system
+        }
+    }
+}
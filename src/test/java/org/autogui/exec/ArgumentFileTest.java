@@ -0,0 +1,56 @@
+package org.autogui.exec;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.List;
+
+public class ArgumentFileTest {
+    @Test
+    public void testQuote() {
+        Assert.assertEquals("plain", "\"a b\"", ArgumentFile.quote("a b"));
+        Assert.assertEquals("escaped", "\"c:\\\\x \\\"y\\\"\\n\"", ArgumentFile.quote("c:\\x \"y\"\n"));
+    }
+
+    @Test
+    public void testWriteAndRun() throws Exception {
+        Path dir = Files.createTempDirectory("mvn-exec-args-test");
+        List<String> args = List.of("-cp", System.getProperty("java.class.path"),
+                ProcessShellTest.TestMainError.class.getName(), "a \"b\" c\\d", "'e f'");
+        Path file = ArgumentFile.write(dir, args);
+        Assert.assertEquals("same file", file, ArgumentFile.write(dir, args));
+
+        String java = ProcessHandle.current().info().command().orElse("java");
+        Assert.assertEquals("run", List.of("error:a \"b\" c\\d", "out:'e f'"),
+                ProcessShell.get(java, "@" + file)
+                        .set(p -> p.redirectErrorStream(true))
+                        .runToLines());
+    }
+
+    @Test
+    public void testReplacePlanted() throws Exception {
+        Path dir = Files.createTempDirectory("mvn-exec-args-test");
+        List<String> args = List.of("-cp", "a.jar", "my.Main");
+        Path file = ArgumentFile.write(dir, args);
+        String contents = Files.readString(file);
+        Files.writeString(file, "\"-javaagent:evil.jar\"\n" + contents); //planted with the predictable name
+        Assert.assertEquals("same name", file, ArgumentFile.write(dir, args));
+        Assert.assertEquals("replaced", contents, Files.readString(file));
+
+        Files.setPosixFilePermissions(dir, PosixFilePermissions.fromString("rwxrwxrwx"));
+        Assert.assertThrows(RuntimeException.class, () -> ArgumentFile.write(dir, args));
+    }
+
+    @Test
+    public void testReadLines() {
+        List<String> lines = new ArrayList<>();
+        ArgumentFile.readLines(new ByteArrayInputStream("x y\n\nz\n".getBytes(StandardCharsets.UTF_8)), lines::add);
+        Assert.assertEquals("lines", List.of("x y", "", "z"), lines);
+    }
+}
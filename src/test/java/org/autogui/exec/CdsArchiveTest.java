@@ -0,0 +1,47 @@
+package org.autogui.exec;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.jar.JarFile;
+
+public class CdsArchiveTest {
+    @Test
+    public void testSupported() {
+        Assert.assertTrue("21", CdsArchive.isSupported("IMPLEMENTOR=\"Eclipse Adoptium\"\nJAVA_VERSION=\"21.0.1\"\n"));
+        Assert.assertFalse("17", CdsArchive.isSupported("JAVA_VERSION=\"17.0.8\"\n"));
+        Assert.assertFalse("1.8", CdsArchive.isSupported("JAVA_VERSION=\"1.8.0_382\"\n"));
+        Assert.assertFalse("no release", CdsArchive.isSupported(null));
+    }
+
+    @Test
+    public void testClasspathForArchive() throws Exception {
+        Path project = Files.createTempDirectory("mvn-exec-cds-test");
+        Path classes = project.resolve("target/classes");
+        Files.createDirectories(classes.resolve("a"));
+        Files.writeString(classes.resolve("a/A.class"), "a");
+        Path dep = Files.writeString(project.resolve("dep.jar"), "dep");
+
+        CdsArchive archive = new CdsArchive(project.toFile());
+        List<String> cp = archive.getClasspathForArchive(List.of(classes.toString(), dep.toString()));
+        Assert.assertEquals("dep", dep.toString(), cp.get(1));
+        Path jar = Path.of(cp.get(0));
+        Assert.assertEquals("jar dir", archive.getArchiveDir(), jar.getParent());
+        try (JarFile f = new JarFile(jar.toFile())) {
+            Assert.assertNotNull("entry", f.getEntry("a/A.class"));
+        }
+        Assert.assertFalse("up to date", CdsArchive.isStale(classes, jar));
+
+        Files.setLastModifiedTime(jar, FileTime.fromMillis(Files.getLastModifiedTime(jar).toMillis() - 10_000L));
+        Files.writeString(classes.resolve("a/B.class"), "b");
+        Assert.assertTrue("added", CdsArchive.isStale(classes, jar));
+        archive.getClasspathForArchive(List.of(classes.toString()));
+        try (JarFile f = new JarFile(jar.toFile())) {
+            Assert.assertNotNull("updated entry", f.getEntry("a/B.class"));
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package org.autogui.exec;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+public class ClassLoaderCacheTest {
+    static String createJar(Path dir, String name, int size) throws Exception {
+        Path jar = dir.resolve(name);
+        Files.write(jar, new byte[size]);
+        return jar.toString();
+    }
+
+    @Test
+    public void testReuse() throws Exception {
+        Path dir = Files.createTempDirectory("mvn-exec-loader-test");
+        String a = createJar(dir, "a.jar", 100);
+        String b = createJar(dir, "b.jar", 200);
+        ClassLoaderCache cache = new ClassLoaderCache(1000);
+        ClassLoader loader = cache.getLoader(List.of(a, b));
+        Assert.assertSame("reused", loader, cache.getLoader(List.of(a, b)));
+        Assert.assertNotSame("different jars", loader, cache.getLoader(List.of(a)));
+        Assert.assertEquals("total", 400, cache.getTotalBytes());
+
+        Files.write(dir.resolve("b.jar"), new byte[250]);
+        Assert.assertNotSame("updated jar", loader, cache.getLoader(List.of(a, b)));
+        cache.clear();
+        Assert.assertEquals("cleared", 0, cache.size());
+    }
+
+    @Test
+    public void testEvictLeastRecentlyUsed() throws Exception {
+        Path dir = Files.createTempDirectory("mvn-exec-loader-test");
+        String a = createJar(dir, "a.jar", 100);
+        String b = createJar(dir, "b.jar", 100);
+        String c = createJar(dir, "c.jar", 100);
+        ClassLoaderCache cache = new ClassLoaderCache(250);
+        ClassLoader la = cache.getLoader(List.of(a));
+        ClassLoader lb = cache.getLoader(List.of(b));
+        Assert.assertSame("touch a", la, cache.getLoader(List.of(a)));
+        cache.getLoader(List.of(c)); //evicts b
+        Assert.assertEquals("size", 2, cache.size());
+        Assert.assertEquals("total", 200, cache.getTotalBytes());
+        Assert.assertSame("a kept", la, cache.getLoader(List.of(a)));
+        Assert.assertNotSame("b evicted", lb, cache.getLoader(List.of(b)));
+    }
+
+    @Test
+    public void testKeepAcquired() throws Exception {
+        Path dir = Files.createTempDirectory("mvn-exec-loader-test");
+        String a = createJar(dir, "a.jar", 100);
+        String b = createJar(dir, "b.jar", 100);
+        ClassLoaderCache cache = new ClassLoaderCache(150);
+        ClassLoader la = cache.acquire(List.of(a));
+        ClassLoader lb = cache.getLoader(List.of(b));
+        Assert.assertEquals("a in use", 2, cache.size());
+        Assert.assertTrue("in use", cache.isInUse(la));
+
+        cache.release(la);
+        Assert.assertFalse("released", cache.isInUse(la));
+        Assert.assertEquals("evicted after release", 1, cache.size());
+        Assert.assertSame("b kept", lb, cache.getLoader(List.of(b)));
+    }
+}
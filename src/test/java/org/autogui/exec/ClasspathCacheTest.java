@@ -0,0 +1,56 @@
+package org.autogui.exec;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+public class ClasspathCacheTest {
+    static String pom(String parent) {
+        return "<project>\n" + parent + "<artifactId>a</artifactId>\n</project>\n";
+    }
+
+    @Test
+    public void testFingerprintWithParent() throws Exception {
+        Path root = Files.createTempDirectory("mvn-exec-cp-test");
+        Path sub = Files.createDirectories(root.resolve("sub"));
+        Files.writeString(root.resolve("pom.xml"), pom(""));
+        Files.writeString(sub.resolve("pom.xml"), pom("<parent><artifactId>p</artifactId></parent>\n"));
+
+        Assert.assertEquals("parents",
+                List.of(sub.resolve("pom.xml").toAbsolutePath(), root.resolve("pom.xml").toAbsolutePath()),
+                ClasspathCache.getPomFiles(sub.resolve("pom.xml")));
+
+        ClasspathCache cache = new ClasspathCache(sub.toFile());
+        String fp = cache.getFingerprint(List.of());
+        Assert.assertEquals("same", fp, cache.getFingerprint(List.of()));
+        Assert.assertNotEquals("keys", fp, cache.getFingerprint(List.of("-Pprof")));
+
+        Files.writeString(root.resolve("pom.xml"), pom("<!-- changed -->\n"));
+        Assert.assertNotEquals("parent changed", fp, cache.getFingerprint(List.of()));
+
+        Files.writeString(sub.resolve("pom.xml"), pom("<parent><artifactId>p</artifactId><relativePath/></parent>\n"));
+        Assert.assertEquals("no relative parent",
+                List.of(sub.resolve("pom.xml").toAbsolutePath()),
+                ClasspathCache.getPomFiles(sub.resolve("pom.xml")));
+    }
+
+    @Test
+    public void testSaveLoad() throws Exception {
+        Path root = Files.createTempDirectory("mvn-exec-cp-test");
+        Files.writeString(root.resolve("pom.xml"), pom(""));
+        ClasspathCache cache = new ClasspathCache(root.toFile());
+        String fp = cache.getFingerprint(List.of());
+        Assert.assertNull("no cache", cache.load(fp));
+
+        List<String> cp = List.of("target" + File.separator + "classes", "a.jar");
+        cache.save(fp, cp);
+        Assert.assertEquals("load", cp, cache.load(fp));
+
+        Files.writeString(root.resolve("pom.xml"), pom("<!-- changed -->\n"));
+        Assert.assertNull("stale", cache.load(cache.getFingerprint(List.of())));
+    }
+}
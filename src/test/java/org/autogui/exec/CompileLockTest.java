@@ -0,0 +1,67 @@
+package org.autogui.exec;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+
+public class CompileLockTest {
+    @SuppressWarnings("try")
+    @Test
+    public void testThreads() throws Exception {
+        Path project = Files.createTempDirectory("mvn-exec-lock-test");
+        CountDownLatch locked = new CountDownLatch(1);
+        Thread holder = new Thread(() -> {
+            try (CompileLock lock = CompileLock.acquire(project)) {
+                locked.countDown();
+                Thread.sleep(300);
+            } catch (InterruptedException ex) {
+                throw new RuntimeException(ex);
+            }
+        });
+        holder.start();
+        locked.await();
+        try (CompileLock lock = CompileLock.acquire(project)) {
+            Assert.assertTrue("waited " + lock.getWaitTime(), lock.getWaitTime().toMillis() >= 200);
+        }
+        holder.join();
+        Assert.assertTrue("lock file", Files.exists(CompileLock.getLockFile(project)));
+    }
+
+    @Test
+    public void testProcesses() throws Exception {
+        Path project = Files.createTempDirectory("mvn-exec-lock-test");
+        String classpath = System.getProperty("java.class.path");
+        String modulePath = System.getProperty("jdk.module.path"); //surefire runs tests with the module-path
+        if (modulePath != null) {
+            classpath += File.pathSeparator + modulePath;
+        }
+        Process p = new ProcessBuilder(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java",
+                "-cp", classpath, Holder.class.getName(), project.toString())
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+        try (BufferedReader r = new BufferedReader(new InputStreamReader(p.getInputStream()))) {
+            Assert.assertEquals("child", "locked", r.readLine());
+            try (CompileLock lock = CompileLock.acquire(project)) {
+                Assert.assertTrue("waited " + lock.getWaitTime(), lock.getWaitTime().toMillis() >= 200);
+            }
+        }
+        Assert.assertEquals("exit", 0, p.waitFor());
+    }
+
+    public static class Holder {
+        @SuppressWarnings("try")
+        public static void main(String[] args) throws Exception {
+            try (CompileLock lock = CompileLock.acquire(Path.of(args[0]))) {
+                System.out.println("locked");
+                System.out.flush();
+                Thread.sleep(500);
+            }
+        }
+    }
+}
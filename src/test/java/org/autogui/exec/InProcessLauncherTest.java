@@ -0,0 +1,99 @@
+package org.autogui.exec;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.AbstractMap;
+import java.util.List;
+
+public class InProcessLauncherTest {
+    public static class PropertyMain {
+        public static void main(String[] args) {
+            System.setProperty("mvn-exec.test.result", System.getProperty("mvn-exec.test.prop") + ":" + args[0] + ":" +
+                    Thread.currentThread().getName() + ":" +
+                    (PropertyMain.class.getClassLoader() == Thread.currentThread().getContextClassLoader()));
+        }
+    }
+
+    public static class ErrorMain {
+        public static void main(String[] args) {
+            throw new IllegalStateException("error-main");
+        }
+    }
+
+    public static class ThreadMain {
+        public static void main(String[] args) {
+            new Thread(() -> {
+                try {
+                    Thread.sleep(300);
+                } catch (InterruptedException ex) {
+                    throw new RuntimeException(ex);
+                }
+            }).start();
+        }
+    }
+
+    static List<String> testClassPath() throws Exception {
+        return List.of(new File(InProcessLauncherTest.class.getProtectionDomain().getCodeSource().getLocation().toURI()).getPath());
+    }
+
+    @Test
+    public void testRun() throws Exception {
+        InProcessLauncher launcher = new InProcessLauncher(testClassPath())
+                .setProperties(List.of(new AbstractMap.SimpleEntry<>("mvn-exec.test.prop", "hello")));
+        Assert.assertEquals("code", 0, launcher.run(PropertyMain.class.getName(), List.of("world")));
+        Assert.assertEquals("result", "hello:world:main:true", System.getProperty("mvn-exec.test.result"));
+    }
+
+    @Test
+    public void testRunIsolated() throws Exception {
+        InProcessLauncher launcher = new InProcessLauncher(testClassPath());
+        ClassLoader loader = launcher.createClassLoader();
+        Assert.assertNotSame("isolated", PropertyMain.class, loader.loadClass(PropertyMain.class.getName()));
+        Assert.assertSame("java.*", String.class, loader.loadClass("java.lang.String"));
+    }
+
+    @Test
+    public void testParentFirst() throws Exception {
+        String name = "javax.xml.parsers.DocumentBuilderFactory";
+        Path dir = Files.createTempDirectory("mvn-exec-in-process-test");
+        Path file = dir.resolve(name.replace('.', '/') + ".class");
+        Files.createDirectories(file.getParent());
+        try (InputStream in = ClassLoader.getSystemResourceAsStream(name.replace('.', '/') + ".class")) {
+            Files.write(file, in.readAllBytes()); //a copy of a JDK class in the classpath, like xml-apis.jar
+        }
+        try (InProcessLauncher.IsolatedClassLoader loader = InProcessLauncher.createClassLoader(List.of(dir.toString()), ClassLoader.getPlatformClassLoader())) {
+            Assert.assertSame("JDK class", Class.forName(name), loader.loadClass(name));
+        }
+    }
+
+    @Test
+    public void testCloseAfterProgram() throws Exception {
+        InProcessLauncher.IsolatedClassLoader loader = InProcessLauncher.createClassLoader(testClassPath(), ClassLoader.getPlatformClassLoader());
+        String resource = InProcessLauncherTest.class.getName().replace('.', '/') + ".class";
+        Assert.assertEquals("code", 0, new InProcessLauncher(testClassPath()).run(loader, ThreadMain.class.getName(), List.of()));
+        Assert.assertEquals("running thread", 1, InProcessLauncher.getProgramThreads(loader).size());
+
+        Thread closer = InProcessLauncher.closeAfterProgram(loader);
+        Assert.assertNotNull("waiting", closer);
+        Assert.assertNotNull("open while running", loader.findResource(resource));
+        closer.join(10_000);
+        Assert.assertNull("closed", loader.findResource(resource));
+
+        InProcessLauncher.IsolatedClassLoader loader2 = InProcessLauncher.createClassLoader(testClassPath(), ClassLoader.getPlatformClassLoader());
+        Assert.assertEquals("code", 0, new InProcessLauncher(testClassPath()).run(loader2, PropertyMain.class.getName(), List.of("x")));
+        Assert.assertNull("closed immediately", InProcessLauncher.closeAfterProgram(loader2));
+        Assert.assertNull("closed", loader2.findResource(resource));
+    }
+
+    @Test
+    public void testRunError() throws Exception {
+        InProcessLauncher launcher = new InProcessLauncher(testClassPath());
+        Assert.assertEquals("code", 1, launcher.run(ErrorMain.class.getName(), List.of()));
+        Assert.assertEquals("failure", "error-main", launcher.getFailure().getMessage());
+    }
+}
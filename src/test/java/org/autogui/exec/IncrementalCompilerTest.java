@@ -0,0 +1,101 @@
+package org.autogui.exec;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.Set;
+
+public class IncrementalCompilerTest {
+    Path createProject() throws Exception {
+        Path project = Files.createTempDirectory("mvn-exec-javac-test");
+        Files.writeString(project.resolve("pom.xml"), "<project/>");
+        Path src = project.resolve("src/main/java/a");
+        Files.createDirectories(src);
+        Files.writeString(src.resolve("A.java"), "package a; public class A { public static int value() { return 1; } }");
+        Files.writeString(src.resolve("B.java"), "package a; public class B { A a; public static void main(String... args) { System.out.println(A.value()); } }");
+        Files.writeString(src.resolve("C.java"), "package a; public class C { }");
+        Path classes = Files.createDirectories(project.resolve("target/classes"));
+        int code = ToolProvider.getSystemJavaCompiler().run(null, null, null, "-g", "-d", classes.toString(),
+                src.resolve("A.java").toString(), src.resolve("B.java").toString(), src.resolve("C.java").toString());
+        Assert.assertEquals("initial compile", 0, code);
+        try (var files = Files.walk(project.resolve("src"))) {
+            for (Path p : (Iterable<Path>) files::iterator) {
+                Files.setLastModifiedTime(p, FileTime.fromMillis(System.currentTimeMillis() - 60_000L));
+            }
+        }
+        return project;
+    }
+
+    @Test
+    public void testReferences() throws Exception {
+        Path project = createProject();
+        IncrementalCompiler.ClassEntry b = IncrementalCompiler.readClass(project.resolve("target/classes/a/B.class"));
+        Assert.assertEquals("source", "a/B.java", b.source);
+        Assert.assertTrue("field type", b.references.contains("a/A"));
+        Assert.assertFalse("self", b.references.contains("a/B"));
+        Assert.assertTrue("super", b.supers.contains("java/lang/Object"));
+    }
+
+    @Test
+    public void testCompileChanged() throws Exception {
+        Path project = createProject();
+        Path src = project.resolve("src/main/java/a");
+        IncrementalCompiler compiler = new IncrementalCompiler(project.toFile(),
+                List.of(project.resolve("target/classes").toString()), System.err);
+        Assert.assertNull("supported", compiler.getUnsupportedReason(Set.of("src/main/java")));
+        Assert.assertEquals("pom", "pom.xml is changed", compiler.getUnsupportedReason(Set.of("pom.xml")));
+
+        Assert.assertTrue("unchanged", compiler.compile(false));
+        Assert.assertEquals("nothing compiled", List.of(), compiler.getCompiledSources());
+
+        Files.writeString(src.resolve("A.java"), "package a; public class A { public static int value() { return 2; } }");
+        Path res = Files.createDirectories(project.resolve("src/main/resources"));
+        Files.writeString(res.resolve("r.txt"), "r");
+        Files.delete(src.resolve("C.java"));
+        Assert.assertTrue("compiled", compiler.compile(false));
+        Assert.assertEquals("changed and dependent", List.of("src/main/java/a/A.java", "src/main/java/a/B.java"),
+                compiler.getCompiledSources());
+        Assert.assertEquals("deleted", List.of("a/C"), compiler.getDeletedClasses());
+        Assert.assertFalse("deleted class", Files.exists(project.resolve("target/classes/a/C.class")));
+        Assert.assertTrue("resource", Files.exists(project.resolve("target/classes/r.txt")));
+
+        Files.writeString(src.resolve("B.java"), "package a; public class B { X x; }");
+        Assert.assertFalse("error", compiler.compile(false));
+    }
+
+    @Test
+    public void testUnknownSources() throws Exception {
+        Path project = createProject();
+        Path gen = Files.createDirectories(project.resolve("target/generated-sources/a"));
+        Files.writeString(gen.resolve("Gen.java"), "package a; public class Gen { }");
+        int code = ToolProvider.getSystemJavaCompiler().run(null, null, null, "-g", "-d", project.resolve("target/classes").toString(),
+                gen.resolve("Gen.java").toString());
+        Assert.assertEquals("generated compile", 0, code);
+        IncrementalCompiler compiler = new IncrementalCompiler(project.toFile(),
+                List.of(project.resolve("target/classes").toString()), System.err);
+        Assert.assertEquals("generated", "generated sources in target/generated-sources",
+                compiler.getUnsupportedReason(Set.of("src/main/java")));
+
+        Files.delete(project.resolve("src/main/java/a/C.java")); //deleted before any record
+        Assert.assertFalse("unknown sources", compiler.compile(false));
+        Assert.assertNotNull("reason", compiler.getFailureReason());
+        Assert.assertTrue("generated class kept", Files.exists(project.resolve("target/classes/a/Gen.class")));
+        Assert.assertTrue("unrecorded class kept", Files.exists(project.resolve("target/classes/a/C.class")));
+    }
+
+    @Test
+    public void testUnsupportedPom() throws Exception {
+        Path project = createProject();
+        Files.writeString(project.resolve("pom.xml"), "<project><build><resources><resource><filtering>true</filtering></resource></resources></build></project>");
+        IncrementalCompiler compiler = new IncrementalCompiler(project.toFile(), List.of(), System.err);
+        Assert.assertNotNull("filtering", compiler.getUnsupportedReason(Set.of("src/main/resources")));
+        Assert.assertTrue("no processor", new File(project.toFile(), "pom.xml").isFile() &&
+                !IncrementalCompiler.hasProcessor(project.resolve("pom.xml")));
+    }
+}
@@ -0,0 +1,49 @@
+package org.autogui.exec;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+
+public class JvmPoolTest {
+    static ProcessBuilder worker(String dir, String... env) {
+        ProcessBuilder b = new ProcessBuilder("java", "-cp", "w", JvmPoolWorker.class.getName(), "cp").directory(new File(dir));
+        b.environment().clear();
+        for (int i = 0; i < env.length; i += 2) {
+            b.environment().put(env[i], env[i + 1]);
+        }
+        return b;
+    }
+
+    @Test
+    public void testKey() {
+        String key = JvmPool.getKey(worker("/a", "PWD", "/a", "SHLVL", "1", "LANG", "C"));
+        Assert.assertEquals("per-shell variables", key, JvmPool.getKey(worker("/a", "PWD", "/x", "OLDPWD", "/y", "SHLVL", "2", "_", "/usr/bin/x", "LANG", "C")));
+        Assert.assertNotEquals("key variable", key, JvmPool.getKey(worker("/a", "PWD", "/a", "LANG", "ja_JP.UTF-8")));
+        Assert.assertNotEquals("unset key variable", key, JvmPool.getKey(worker("/a", "PWD", "/a", "LANG", "C", "JAVA_TOOL_OPTIONS", "")));
+        Assert.assertNotEquals("directory", key, JvmPool.getKey(worker("/b", "PWD", "/a", "LANG", "C")));
+    }
+
+    @Test
+    public void testCopyWorkerClasses() throws Exception {
+        Path dir = Files.createTempDirectory("mvn-exec-pool-test").resolve("worker");
+        JvmPool.copyWorkerClasses(dir);
+        Path file = dir.resolve(JvmPoolWorker.class.getName().replace('.', '/') + ".class");
+        byte[] data = Files.readAllBytes(file);
+        Assert.assertArrayEquals("copied", MainFinderTest.readClass(JvmPoolWorker.class), data);
+
+        Files.write(file, new byte[] {1, 2, 3}); //planted or truncated
+        JvmPool.copyWorkerClasses(dir);
+        Assert.assertArrayEquals("replaced", data, Files.readAllBytes(file));
+        try (var files = Files.list(file.getParent())) {
+            Assert.assertEquals("no temporary files", 0, files.filter(p -> p.toString().endsWith(".tmp")).count());
+        }
+
+        Files.setPosixFilePermissions(file.getParent(), PosixFilePermissions.fromString("rwxrwxrwx"));
+        Assert.assertThrows(IOException.class, () -> JvmPool.copyWorkerClasses(dir));
+    }
+}
@@ -0,0 +1,83 @@
+package org.autogui.exec;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class LineSplitterTest {
+    static List<String> split(String data, Charset charset, int bufferSize) throws Exception {
+        List<String> lines = new ArrayList<>();
+        new LineSplitter(charset, new StreamTransfer(bufferSize, 1))
+                .splitToStrings(new ByteArrayInputStream(data.getBytes(charset)), lines::add);
+        return lines;
+    }
+
+    static List<String> readLines(byte[] data, Charset charset) throws Exception {
+        List<String> lines = new ArrayList<>();
+        BufferedReader r = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(data), charset));
+        String line;
+        while ((line = r.readLine()) != null) {
+            lines.add(line);
+        }
+        return lines;
+    }
+
+    @Test
+    public void testTerminators() throws Exception {
+        for (int size : new int[] {1, 2, 3, 1024}) {
+            Assert.assertEquals("lines " + size, List.of("a", "bc", "", "d", "", "e"),
+                    split("a\nbc\n\nd\r\n\re", StandardCharsets.UTF_8, size));
+            Assert.assertEquals("no lines " + size, List.of(), split("", StandardCharsets.UTF_8, size));
+            Assert.assertEquals("last terminator " + size, List.of("a", ""), split("a\n\r\n", StandardCharsets.UTF_8, size));
+        }
+    }
+
+    @Test
+    public void testDecode() throws Exception {
+        Assert.assertEquals("utf-8", List.of("héllo", "日本語", "x"),
+                split("héllo\n日本語\r\nx", StandardCharsets.UTF_8, 3));
+        Assert.assertEquals("utf-16", List.of("héllo", "日本語"),
+                split("héllo\n日本語\n", StandardCharsets.UTF_16, 3));
+        byte[] malformed = {'a', (byte) 0xff, 'b', '\n'};
+        List<String> lines = new ArrayList<>();
+        new LineSplitter(StandardCharsets.UTF_8).splitToStrings(new ByteArrayInputStream(malformed), lines::add);
+        Assert.assertEquals("replaced", readLines(malformed, StandardCharsets.UTF_8), lines);
+    }
+
+    @Test
+    public void testViews() throws Exception {
+        List<String> lines = new ArrayList<>();
+        List<CharSequence> views = new ArrayList<>();
+        new LineSplitter(StandardCharsets.UTF_8).split(
+                new ByteArrayInputStream("abc\ndéf\nghi\n".getBytes(StandardCharsets.UTF_8)), line -> {
+                    lines.add(line.toString());
+                    views.add(line);
+                });
+        Assert.assertEquals("lines", List.of("abc", "déf", "ghi"), lines);
+        Assert.assertSame("reused ascii view", views.get(0), views.get(2));
+        Assert.assertEquals("char", 'g', views.get(2).charAt(0));
+    }
+
+    @Test
+    public void testRandom() throws Exception {
+        Random rand = new Random(42);
+        String alphabet = "ab\n\r é日";
+        StringBuilder buf = new StringBuilder();
+        for (int i = 0; i < 10_000; ++i) {
+            buf.append(alphabet.charAt(rand.nextInt(alphabet.length())));
+        }
+        String data = buf.toString();
+        for (int size : new int[] {1, 7, 8192}) {
+            Assert.assertEquals("random " + size, readLines(data.getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8),
+                    split(data, StandardCharsets.UTF_8, size));
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package org.autogui.exec;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class MainFinderTest {
+    static byte[] readClass(Class<?> cls) throws Exception {
+        try (InputStream in = cls.getResourceAsStream("/" + cls.getName().replace('.', '/') + ".class")) {
+            return in.readAllBytes();
+        }
+    }
+
+    @Test
+    public void testHasMainCandidate() throws Exception {
+        Assert.assertTrue("hasMainCandidate main class",
+                MainFinder.hasMainCandidate(readClass(ProcessShellTest.TestMain.class)));
+        Assert.assertFalse("hasMainCandidate non-main class",
+                MainFinder.hasMainCandidate(readClass(ProcessShell.class)));
+        Assert.assertTrue("hasMainCandidate broken data",
+                MainFinder.hasMainCandidate(new byte[] {(byte) 0xCA, (byte) 0xFE, (byte) 0xBA, (byte) 0xBE, 0, 0, 0, 65, 0, 10, 1}));
+    }
+
+    @Test
+    public void testMatchClassConstantPoolRejected() throws Exception {
+        MainFinder finder = new MainFinder("TM");
+        Assert.assertEquals("matchClass main class",
+                ProcessShellTest.TestMain.class.getName(),
+                finder.matchClass(readClass(ProcessShellTest.TestMain.class)));
+        Assert.assertFalse("not rejected", finder.isConstantPoolRejected());
+
+        finder = new MainFinder("PS");
+        Assert.assertNull("matchClass non-main class",
+                finder.matchClass(readClass(ProcessShell.class)));
+        Assert.assertTrue("rejected", finder.isConstantPoolRejected());
+    }
+
+    static String[] segments = {"org", "autogui", "exec", "my", "pack", "MyMainClass", "MainFinder", "Test", "ABC",
+            "X1", "Hello2World", "a", "HTMLParser", "Outer", "Inner", "myMain", "M", "UTF8Reader", "x_y", "Main"};
+
+    static String randomName(Random rand) {
+        int n = 1 + rand.nextInt(5);
+        StringBuilder buf = new StringBuilder();
+        for (int i = 0; i < n; ++i) {
+            if (i > 0) {
+                buf.append('.');
+            }
+            buf.append(segments[rand.nextInt(segments.length)]);
+        }
+        return buf.toString();
+    }
+
+    static String randomQuery(Random rand, List<String> names) {
+        if (rand.nextInt(5) == 0) { //qualified: a suffix of a name
+            String name = names.get(rand.nextInt(names.size()));
+            int dot = name.indexOf('.');
+            if (dot >= 0) {
+                return name.substring(rand.nextInt(dot + 1));
+            }
+        }
+        String chars = "MmCcAaTtEeHhOoXx1238*_";
+        int n = 1 + rand.nextInt(6);
+        StringBuilder buf = new StringBuilder();
+        for (int i = 0; i < n; ++i) {
+            buf.append(chars.charAt(rand.nextInt(chars.length())));
+        }
+        return buf.toString();
+    }
+
+    @Test
+    public void testNameMatcherSameAsRegex() {
+        Random rand = new Random(12345);
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < 300; ++i) {
+            names.add(randomName(rand));
+        }
+        for (int q = 0; q < 500; ++q) {
+            String query = randomQuery(rand, names);
+            Pattern pattern = MainFinder.getPatternFromString(query);
+            NameMatcher matcher = new NameMatcher(query);
+            for (String name : names) {
+                Matcher m = pattern.matcher(name);
+                int[] groups = matcher.matchGroups(name);
+                if (m.matches()) {
+                    Assert.assertNotNull("matched: " + query + " : " + name, groups);
+                    int[] expected = new int[m.groupCount()];
+                    for (int g = 0; g < expected.length; ++g) {
+                        expected[g] = m.start(g + 1);
+                    }
+                    Assert.assertArrayEquals("groups: " + query + " : " + name, expected, groups);
+                } else {
+                    Assert.assertNull("unmatched: " + query + " : " + name, groups);
+                }
+                Assert.assertEquals("score: " + query + " : " + name,
+                        MainFinder.match(name, pattern), matcher.match(name));
+            }
+        }
+    }
+
+    @Test
+    public void testNameMatcherRanking() {
+        Random rand = new Random(67890);
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < 300; ++i) {
+            names.add(randomName(rand));
+        }
+        for (String query : List.of("MMC", "mmc", "MyMaCl", "Mai", "HW", "h*w", "pack.MyMainClass", ".Main", "UR", "T1")) {
+            Pattern pattern = MainFinder.getPatternFromString(query);
+            NameMatcher matcher = new NameMatcher(query);
+            Assert.assertEquals("ranking: " + query,
+                    rank(names, n -> MainFinder.match(n, pattern)),
+                    rank(names, matcher::match));
+        }
+    }
+
+    static List<String> rank(List<String> names, java.util.function.ToIntFunction<String> score) {
+        List<String> ranked = new ArrayList<>();
+        for (String name : names) {
+            if (score.applyAsInt(name) > 0) {
+                ranked.add(name);
+            }
+        }
+        ranked.sort(Comparator.comparingInt(score).reversed());
+        return ranked;
+    }
+
+    @Test
+    public void testNameMatcherExamples() {
+        NameMatcher m = new NameMatcher("MMC");
+        Assert.assertArrayEquals("MMC", new int[] {8, 10, 14}, m.matchGroups("my.pack.MyMainClass"));
+        Assert.assertNull("no dot between groups", m.matchGroups("My.Main.Class"));
+        Assert.assertNotNull("star", new NameMatcher("M*C").matchGroups("My.Main.Class"));
+        Assert.assertEquals("qualified", 1, new NameMatcher("pack.MyMainClass").match("my.pack.MyMainClass"));
+        Assert.assertEquals("unmatched", 0, new NameMatcher("Z").match("my.pack.MyMainClass"));
+    }
+
+    @Test
+    public void testMainClassSelectorSameAsSort() {
+        Random rand = new Random(2468);
+        for (int top : new int[] {1, 3, 10, 100}) {
+            List<MavenExecJava.MainClassInfo> mains = new ArrayList<>();
+            MainClassSelector selector = new MainClassSelector(top);
+            for (int i = 0; i < 50; ++i) {
+                MavenExecJava.MainClassInfo m = new MavenExecJava.MainClassInfo(null, "C" + i, rand.nextInt(5));
+                mains.add(m);
+                selector.accept(m);
+            }
+            List<MavenExecJava.MainClassInfo> sorted = new ArrayList<>(mains);
+            sorted.sort(Comparator.comparingInt(MavenExecJava.MainClassInfo::getScore).reversed());
+            Assert.assertEquals("top " + top,
+                    sorted.subList(0, Math.min(top, sorted.size())), selector.getSelected());
+            Assert.assertSame("first " + top, sorted.getFirst(), selector.getFirst());
+            Assert.assertEquals("count", 50, selector.getCount());
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package org.autogui.exec;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class MainIndexTest {
+    static Path createClasses() throws Exception {
+        Path dir = Files.createTempDirectory("mvn-exec-index-test").resolve("classes");
+        writeClass(dir, ProcessShellTest.TestMain.class);
+        writeClass(dir, ProcessShell.class);
+        return dir;
+    }
+
+    static Path writeClass(Path dir, Class<?> cls) throws Exception {
+        Path file = dir.resolve(cls.getName().replace('.', '/') + ".class");
+        Files.createDirectories(file.getParent());
+        return Files.write(file, MainFinderTest.readClass(cls));
+    }
+
+    static List<String> entries(MainIndex index) {
+        return index.getEntries().stream()
+                .map(MainIndex.Entry::toString)
+                .collect(Collectors.toList());
+    }
+
+    @Test
+    public void testSaveLoad() throws Exception {
+        Path dir = createClasses();
+        MainIndex index = MainIndex.load(dir, new ClassScanner(1));
+        Assert.assertTrue("no index", index.getEntries().isEmpty());
+        Assert.assertTrue("updated", index.update());
+        Assert.assertEquals("parsed", 2, index.getParsedCount());
+        Assert.assertEquals("mains", List.of(ProcessShellTest.TestMain.class.getName()),
+                index.getMainEntries().stream().map(MainIndex.Entry::getName).collect(Collectors.toList()));
+        index.save();
+        Assert.assertFalse("saved", index.isModified());
+        Assert.assertEquals("index file", dir.resolveSibling(".mvn-exec-index").resolve("classes.idx"), index.getIndexFile());
+
+        MainIndex loaded = MainIndex.load(dir, new ClassScanner(1));
+        Assert.assertEquals("round-trip", entries(index), entries(loaded));
+        Assert.assertFalse("unchanged", loaded.update());
+        Assert.assertEquals("not parsed", 0, loaded.getParsedCount());
+    }
+
+    @Test
+    public void testStale() throws Exception {
+        Path dir = createClasses();
+        Path main = dir.resolve(ProcessShellTest.TestMain.class.getName().replace('.', '/') + ".class");
+        Path pack = main.getParent();
+        Files.setLastModifiedTime(pack, FileTime.fromMillis(1_000_000L));
+        MainIndex index = MainIndex.load(dir, new ClassScanner(1));
+        index.update();
+        index.save();
+
+        Files.setLastModifiedTime(main, FileTime.fromMillis(2_000_000L));
+        MainIndex loaded = MainIndex.load(dir, new ClassScanner(1));
+        Assert.assertTrue("modified file", loaded.update());
+        Assert.assertEquals("re-parsed", 1, loaded.getParsedCount());
+        Assert.assertEquals("main kept", 1, loaded.getMainEntries().size());
+
+        Files.delete(main); //also changes the time of the directory
+        Assert.assertTrue("deleted file", loaded.update());
+        Assert.assertEquals("only walked", 0, loaded.getParsedCount());
+        Assert.assertTrue("no mains", loaded.getMainEntries().isEmpty());
+        Assert.assertEquals("entries", 1, loaded.getEntries().size());
+    }
+
+    @Test
+    public void testCorrupt() throws Exception {
+        Path dir = createClasses();
+        MainIndex index = MainIndex.load(dir, new ClassScanner(1));
+        index.update();
+        index.save();
+        List<String> expected = entries(index);
+        Path file = index.getIndexFile();
+
+        for (String broken : List.of(
+                "",
+                "mvn-exec-index 0\n",
+                MainIndex.INDEX_HEADER + "\nF\tA.class\t1\n",
+                MainIndex.INDEX_HEADER + "\nF\tA.class\tx\t1\t1\tA\n",
+                "\u0000\u0001binary")) {
+            Files.writeString(file, broken);
+            MainIndex loaded = MainIndex.load(dir, new ClassScanner(1));
+            Assert.assertTrue("ignored: " + broken, loaded.getEntries().isEmpty());
+            Assert.assertTrue("rebuilt", loaded.update());
+            Assert.assertEquals("rebuilt entries", expected, entries(loaded));
+            loaded.save();
+        }
+        Assert.assertEquals("saved", expected, entries(MainIndex.load(dir, new ClassScanner(1))));
+    }
+}
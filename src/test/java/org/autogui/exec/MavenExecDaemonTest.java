@@ -0,0 +1,280 @@
+package org.autogui.exec;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+public class MavenExecDaemonTest {
+    static Path createProject() throws Exception {
+        return createProject(ProcessShellTest.TestMain.class);
+    }
+
+    static Path createProject(Class<?> main) throws Exception {
+        Path dir = Files.createTempDirectory("mvn-exec-daemon-test");
+        Files.writeString(dir.resolve("pom.xml"), "<project></project>\n");
+        Path classFile = dir.resolve("target/classes/" + main.getName().replace('.', '/') + ".class");
+        Files.createDirectories(classFile.getParent());
+        Files.write(classFile, MainFinderTest.readClass(main));
+        return dir;
+    }
+
+    static int request(Path socket, ByteArrayOutputStream out, String... args) throws Exception {
+        return request(socket, new ByteArrayInputStream(new byte[0]), out, args);
+    }
+
+    static int request(Path socket, InputStream in, ByteArrayOutputStream out, String... args) throws Exception {
+        try (SocketChannel ch = SocketChannel.open(StandardProtocolFamily.UNIX)) {
+            ch.connect(UnixDomainSocketAddress.of(socket));
+            MavenExecClient client = new MavenExecClient();
+            client.in = in;
+            client.out = new PrintStream(out, true, StandardCharsets.UTF_8);
+            client.err = new PrintStream(new ByteArrayOutputStream(), true, StandardCharsets.UTF_8);
+            return client.request(ch, args);
+        }
+    }
+
+    static Thread start(MavenExecDaemon daemon) throws Exception {
+        Thread thread = new Thread(daemon::run);
+        thread.start();
+        for (int i = 0; i < 100 && !MavenExecDaemon.isAlive(daemon.getSocketPath()); ++i) {
+            Thread.sleep(50);
+        }
+        return thread;
+    }
+
+    @Test
+    public void testFindAndStop() throws Exception {
+        Path project = createProject();
+        Path socket = Files.createTempDirectory("mvn-exec-daemon-test-sock").resolve("d.sock");
+        MavenExecDaemon daemon = new MavenExecDaemon(socket, 60, new ClassScanner(1));
+        Thread thread = start(daemon);
+
+        for (int i = 0; i < 2; ++i) { //the second request uses the index in memory
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            Assert.assertEquals("find code", 0, request(socket, out, "-pr", project.toString(), "-sac", "-f", "TestMain"));
+            Assert.assertEquals("find",
+                    ProcessShellTest.TestMain.class.getName() + System.lineSeparator(),
+                    out.toString(StandardCharsets.UTF_8));
+        }
+        Assert.assertEquals("index in memory", 1, daemon.indexCache.size());
+
+        Assert.assertEquals("not found", 1, request(socket, new ByteArrayOutputStream(), "-pr", project.toString(), "-sac", "-f", "NoSuchXyz"));
+
+        Assert.assertEquals("program arg", 0, request(socket, new ByteArrayOutputStream(), "-pr", project.toString(), "-sac", "-f", "TestMain", "--", "--daemonStop"));
+        Assert.assertTrue("not stopped by a program arg", MavenExecDaemon.isAlive(socket));
+
+        Assert.assertEquals("stop", 0, request(socket, new ByteArrayOutputStream(), "--daemonStop"));
+        thread.join(10_000);
+        Assert.assertFalse("stopped", thread.isAlive());
+        Assert.assertFalse("socket deleted", Files.exists(socket));
+    }
+
+    @Test
+    public void testInProcessResident() throws Exception {
+        Path project = createProject(ProcessShellTest.TestMainRead.class);
+        Path jar = Files.write(project.resolve("dep.jar"), new byte[100]);
+        ClasspathCache cpCache = new ClasspathCache(project.toFile());
+        cpCache.save(cpCache.getFingerprint(List.of("--color", "always")), List.of(project.resolve("target/classes").toString(), jar.toString()));
+
+        Path socket = Files.createTempDirectory("mvn-exec-daemon-test-sock").resolve("d.sock");
+        MavenExecDaemon daemon = new MavenExecDaemon(socket, 60, new ClassScanner(1));
+        Thread thread = start(daemon);
+        for (int i = 0; i < 2; ++i) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            Assert.assertEquals("run code", 0, request(socket,
+                    new ByteArrayInputStream(("a" + i + "\nb\n").getBytes(StandardCharsets.UTF_8)), out,
+                    "-pr", project.toString(), "--inProcess", "TestMainRead"));
+            Assert.assertEquals("run", "<a" + i + ">" + System.lineSeparator() + "<b>" + System.lineSeparator(),
+                    out.toString(StandardCharsets.UTF_8));
+            Assert.assertEquals("loader reused", 1, daemon.getLoaderCache().size());
+        }
+        Assert.assertEquals("stop", 0, request(socket, new ByteArrayOutputStream(), "--daemonStop"));
+        thread.join(10_000);
+    }
+
+    @Test
+    public void testConcurrentRequests() throws Exception {
+        Path project = createProject(ProcessShellTest.TestMainRead.class);
+        ClasspathCache cpCache = new ClasspathCache(project.toFile());
+        cpCache.save(cpCache.getFingerprint(List.of("--color", "always")), List.of(project.resolve("target/classes").toString()));
+
+        Path socket = Files.createTempDirectory("mvn-exec-daemon-test-sock").resolve("d.sock");
+        MavenExecDaemon daemon = new MavenExecDaemon(socket, 60, new ClassScanner(1));
+        Thread thread = start(daemon);
+
+        PipedOutputStream input = new PipedOutputStream();
+        PipedInputStream programIn = new PipedInputStream(input);
+        ByteArrayOutputStream runOut = new ByteArrayOutputStream();
+        CompletableFuture<Integer> run = CompletableFuture.supplyAsync(() -> {
+            try {
+                return request(socket, programIn, runOut, "-pr", project.toString(), "--inProcess", "TestMainRead");
+            } catch (Exception ex) {
+                throw new RuntimeException(ex);
+            }
+        });
+        for (int i = 0; i < 100 && !daemon.residentLock.isLocked(); ++i) {
+            Thread.sleep(50);
+        }
+        Assert.assertTrue("running", daemon.residentLock.isLocked());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        CompletableFuture<Integer> find = CompletableFuture.supplyAsync(() -> {
+            try {
+                return request(socket, out, "-pr", project.toString(), "-sac", "-f", "TestMainRead");
+            } catch (Exception ex) {
+                throw new RuntimeException(ex);
+            }
+        });
+        Assert.assertEquals("find during the run", 0, (int) find.get(10, TimeUnit.SECONDS));
+        Assert.assertEquals("find", ProcessShellTest.TestMainRead.class.getName() + System.lineSeparator(), out.toString(StandardCharsets.UTF_8));
+        Assert.assertFalse("still running", run.isDone());
+
+        input.write("x\n".getBytes(StandardCharsets.UTF_8));
+        input.close();
+        Assert.assertEquals("run", 0, (int) run.get(10, TimeUnit.SECONDS));
+        Assert.assertEquals("run output", "<x>" + System.lineSeparator(), runOut.toString(StandardCharsets.UTF_8));
+
+        Assert.assertEquals("stop", 0, request(socket, new ByteArrayOutputStream(), "--daemonStop"));
+        thread.join(10_000);
+        Assert.assertFalse("stopped", thread.isAlive());
+    }
+
+    @Test
+    public void testPooled() throws Exception {
+        Path project = createProject(ProcessShellTest.TestMainRead.class);
+        ClasspathCache cpCache = new ClasspathCache(project.toFile());
+        cpCache.save(cpCache.getFingerprint(List.of("--color", "always")), List.of(project.resolve("target/classes").toString()));
+        String java = ProcessHandle.current().info().command().orElse("java");
+
+        Path socket = Files.createTempDirectory("mvn-exec-daemon-test-sock").resolve("d.sock");
+        MavenExecDaemon daemon = new MavenExecDaemon(socket, 60, new ClassScanner(1));
+        daemon.setPoolSize(1);
+        Thread thread = start(daemon);
+        try {
+            for (int i = 0; i < 2; ++i) { //the second request uses the JVM started by the first request
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                Assert.assertEquals("run code", 0, request(socket,
+                        new ByteArrayInputStream(("a" + i + "\nb\n").getBytes(StandardCharsets.UTF_8)), out,
+                        "-pr", project.toString(), "--direct", "--java", java, "TestMainRead"));
+                Assert.assertEquals("run", "<a" + i + ">" + System.lineSeparator() + "<b>" + System.lineSeparator(),
+                        out.toString(StandardCharsets.UTF_8));
+                for (int t = 0; t < 100 && daemon.getJvmPool().idle.values().stream().allMatch(Collection::isEmpty); ++t) {
+                    Thread.sleep(50);
+                }
+                Assert.assertEquals("idle JVM", 1, daemon.getJvmPool().idle.values().iterator().next().size());
+            }
+        } finally {
+            request(socket, new ByteArrayOutputStream(), "--daemonStop");
+            thread.join(10_000);
+        }
+    }
+
+    @Test
+    public void testPooledOpenInput() throws Exception {
+        Path project = createProject();
+        ClasspathCache cpCache = new ClasspathCache(project.toFile());
+        cpCache.save(cpCache.getFingerprint(List.of("--color", "always")), List.of(project.resolve("target/classes").toString()));
+        String java = ProcessHandle.current().info().command().orElse("java");
+        InputStream openInput = new InputStream() { //like a terminal: never reaches the end
+            @Override
+            public int read() throws IOException {
+                try {
+                    Thread.sleep(Long.MAX_VALUE);
+                } catch (InterruptedException ex) {
+                    throw new InterruptedIOException();
+                }
+                return -1;
+            }
+        };
+
+        Path socket = Files.createTempDirectory("mvn-exec-daemon-test-sock").resolve("d.sock");
+        MavenExecDaemon daemon = new MavenExecDaemon(socket, 60, new ClassScanner(1));
+        daemon.setPoolSize(1);
+        Thread thread = start(daemon);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            Assert.assertEquals("run code", 0, request(socket, openInput, out,
+                    "-pr", project.toString(), "--direct", "--java", java, "TestMain", "x"));
+            Assert.assertEquals("run", "finish:x" + System.lineSeparator(), out.toString(StandardCharsets.UTF_8));
+        } finally {
+            request(socket, new ByteArrayOutputStream(), "--daemonStop");
+            thread.join(10_000);
+        }
+    }
+
+    @Test
+    public void testMavenOutputTail() throws Exception {
+        Path project = createProject();
+        Path mvn = project.resolve("fake-mvn");
+        Files.writeString(mvn, "#!/bin/sh\nseq 1 100000\n");
+        mvn.toFile().setExecutable(true);
+
+        Path socket = Files.createTempDirectory("mvn-exec-daemon-test-sock").resolve("d.sock");
+        MavenExecDaemon daemon = new MavenExecDaemon(socket, 60, new ClassScanner(1));
+        Thread thread = start(daemon);
+        StringBuilder expected = new StringBuilder();
+        for (int i = 1; i <= 100000; ++i) {
+            expected.append(i).append('\n');
+        }
+        expected.append(ProcessShellTest.TestMain.class.getName()).append(System.lineSeparator());
+        ByteArrayOutputStream out = new ByteArrayOutputStream() {
+            @Override
+            public synchronized void write(byte[] b, int off, int len) {
+                try {
+                    Thread.sleep(1 + len / 1000); //a slow client: outputs of mvn remain at the exit of mvn
+                } catch (InterruptedException ex) {
+                    throw new RuntimeException(ex);
+                }
+                super.write(b, off, len);
+            }
+        };
+        Assert.assertEquals("code", 0, request(socket, out,
+                "-pr", project.toString(), "--mvn", mvn.toString(), "-fc", "-sic", "-f", "TestMain"));
+        Assert.assertEquals("whole output of mvn before the result", expected.toString(), out.toString(StandardCharsets.UTF_8));
+
+        Assert.assertEquals("stop", 0, request(socket, new ByteArrayOutputStream(), "--daemonStop"));
+        thread.join(10_000);
+    }
+
+    @Test
+    public void testHandoff() throws Exception {
+        Path project = createProject();
+        ClasspathCache cpCache = new ClasspathCache(project.toFile());
+        cpCache.save(cpCache.getFingerprint(List.of("--color", "always")), List.of(project.resolve("target/classes").toString()));
+        Path handoff = project.resolve("handoff");
+
+        Path socket = Files.createTempDirectory("mvn-exec-daemon-test-sock").resolve("d.sock");
+        MavenExecDaemon daemon = new MavenExecDaemon(socket, 60, new ClassScanner(1));
+        Thread thread = start(daemon);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Assert.assertEquals("code", 0, request(socket, out,
+                "-pr", project.toString(), "--direct", "--java", "java", "--handoff", handoff.toString(), "TestMain", "a b", "c'd"));
+        Assert.assertEquals("not launched by the client", "", out.toString(StandardCharsets.UTF_8));
+        Assert.assertEquals("handoff by the daemon",
+                List.of(new File(".").getAbsolutePath(), "--",
+                        "java", "-cp", project.resolve("target/classes").toString(), ProcessShellTest.TestMain.class.getName(), "a b", "c'd"),
+                List.of(Files.readString(handoff).split("\0")));
+
+        Assert.assertEquals("stop", 0, request(socket, new ByteArrayOutputStream(), "--daemonStop"));
+        thread.join(10_000);
+    }
+}
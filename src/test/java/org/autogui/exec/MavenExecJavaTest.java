@@ -0,0 +1,56 @@
+package org.autogui.exec;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+public class MavenExecJavaTest {
+    @Test
+    public void testHandoff() throws Exception {
+        Path project = MavenExecDaemonTest.createProject();
+        ClasspathCache cpCache = new ClasspathCache(project.toFile());
+        cpCache.save(cpCache.getFingerprint(List.of("--color", "always")), List.of(project.resolve("target/classes").toString()));
+        Path handoff = project.resolve("handoff");
+
+        MavenExecJava exec = new MavenExecJava();
+        exec.out = new PrintStream(new ByteArrayOutputStream(), true, StandardCharsets.UTF_8);
+        exec.err = exec.out;
+        exec.run("-pr", project.toString(), "--direct", "--java", "java", "--handoff", handoff.toString(), "TestMain", "a b", "c'd");
+        Assert.assertEquals("handoff",
+                List.of(new File(".").getAbsolutePath(), "--",
+                        "java", "-cp", project.resolve("target/classes").toString(), ProcessShellTest.TestMain.class.getName(), "a b", "c'd"),
+                List.of(Files.readString(handoff).split("\0")));
+    }
+
+    @Test
+    public void testRedirectToConsoleTail() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream() {
+            @Override
+            public synchronized void write(byte[] b, int off, int len) {
+                try {
+                    Thread.sleep(1 + len / 1000); //a slow client of the daemon: outputs remain in the pipe at the exit of the process
+                } catch (InterruptedException ex) {
+                    throw new RuntimeException(ex);
+                }
+                super.write(b, off, len);
+            }
+        };
+        MavenExecJava exec = new MavenExecJava();
+        exec.out = new PrintStream(bytes, true, StandardCharsets.UTF_8);
+        exec.err = exec.out;
+        Assert.assertEquals("code", 0, exec.redirectToConsole(ProcessShell.get("seq", "1", "100000")).runToReturnCode());
+
+        StringBuilder expected = new StringBuilder();
+        for (int i = 1; i <= 100000; ++i) {
+            expected.append(i).append('\n');
+        }
+        Assert.assertEquals("whole output at the return", expected.toString(), bytes.toString(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,79 @@
+package org.autogui.exec;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+/**
+ * A benchmark of allocations and time for scoring class names by the regex and by {@link NameMatcher}.
+ * <pre>
+ *     java -Xlog:gc -cp target/classes:target/test-classes:target/mods/asm-9.7.jar org.autogui.exec.NameMatcherBench [query] [names] [rounds]
+ * </pre>
+ * It reports allocated bytes per scored name obtained from <code>com.sun.management.ThreadMXBean</code>.
+ *  The bean is obtained by reflection because the patched test module does not read <code>java.management</code>.
+ *  With <code>-Xlog:gc</code>, no GC lines are printed during the rounds of {@link NameMatcher}.
+ */
+public class NameMatcherBench {
+    public static void main(String[] args) {
+        String query = args.length > 0 ? args[0] : "MyMaCl";
+        int size = args.length > 1 ? Integer.parseInt(args[1]) : 40_000;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+
+        Random rand = new Random(42);
+        List<String> names = new ArrayList<>(size);
+        for (int i = 0; i < size; ++i) {
+            names.add(MainFinderTest.randomName(rand));
+        }
+        Pattern pattern = MainFinder.getPatternFromString(query);
+        NameMatcher matcher = new NameMatcher(query);
+
+        for (int r = 0; r < 3; ++r) { //warm-up
+            run("regex", names, n -> MainFinder.match(n, pattern), false);
+            run("matcher", names, matcher::match, false);
+        }
+        System.out.printf("query=%s names=%,d rounds=%,d%n", query, size, rounds);
+        for (int r = 0; r < rounds; ++r) {
+            run("regex", names, n -> MainFinder.match(n, pattern), true);
+        }
+        for (int r = 0; r < rounds; ++r) {
+            run("matcher", names, matcher::match, true);
+        }
+    }
+
+    static long total;
+
+    static void run(String label, List<String> names, java.util.function.ToIntFunction<String> score, boolean report) {
+        long bytes = allocatedBytes();
+        long time = System.nanoTime();
+        long sum = 0;
+        for (int i = 0, l = names.size(); i < l; ++i) {
+            sum += score.applyAsInt(names.get(i));
+        }
+        time = System.nanoTime() - time;
+        bytes = allocatedBytes() - bytes;
+        total += sum;
+        if (report) {
+            System.out.printf("%-8s %8.1f bytes/name %8.1f ns/name (score sum %,d)%n", label,
+                    bytes / (double) names.size(), time / (double) names.size(), sum);
+        }
+    }
+
+    static Object threadBean;
+    static Method allocatedBytesMethod;
+
+    static long allocatedBytes() {
+        try {
+            if (threadBean == null) {
+                threadBean = Class.forName("java.lang.management.ManagementFactory")
+                        .getMethod("getThreadMXBean").invoke(null);
+                allocatedBytesMethod = Class.forName("com.sun.management.ThreadMXBean")
+                        .getMethod("getThreadAllocatedBytes", long.class);
+            }
+            return (Long) allocatedBytesMethod.invoke(threadBean, Thread.currentThread().threadId());
+        } catch (Exception ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+}
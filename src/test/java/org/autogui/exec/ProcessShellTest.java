@@ -7,10 +7,13 @@ import java.io.*;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CompletableFuture;
@@ -337,6 +340,128 @@ public class ProcessShellTest {
                 f.get(1100, TimeUnit.MILLISECONDS));
     }
 
+    @Test
+    public void testSetExecutor() {
+        List<Runnable> tasks = Collections.synchronizedList(new ArrayList<>());
+        Assert.assertEquals("setExecutor", String.format("finish:hello%n"),
+                ProcessShell.get(javaCommand, "-cp", testClassPath, TestMain.class.getName(), "hello")
+                        .setExecutor(task -> {
+                            tasks.add(task);
+                            ProcessShell.PLATFORM_THREAD_EXECUTOR.execute(task);
+                        })
+                        .runToString());
+        Assert.assertEquals("output task", 1, tasks.size());
+    }
+
+    @Test
+    public void testRunToReturnCodeWaitsOutputs() {
+        List<String> written = Collections.synchronizedList(new ArrayList<>());
+        ProcessShell.Processor<Process> slowOutput = p -> {
+            try (InputStream in = p.getInputStream()) {
+                in.readAllBytes();
+            }
+            Thread.sleep(300);
+            written.add("out");
+        };
+        ProcessShell.Processor<Process> slowError = p -> {
+            try (InputStream in = p.getErrorStream()) {
+                in.readAllBytes();
+            }
+            Thread.sleep(300);
+            written.add("err");
+        };
+        Assert.assertEquals("code", 0,
+                ProcessShell.get(javaCommand, "-cp", testClassPath, TestMain.class.getName(), "hello")
+                        .setOutput(slowOutput)
+                        .setError(slowError)
+                        .setWaitThreads(false)
+                        .runToReturnCode());
+        Assert.assertEquals("tasks finished", Set.of("out", "err"), Set.copyOf(written));
+    }
+
+    @Test
+    public void testInputCancelledAtExit() throws Exception {
+        PipedInputStream neverEnds = new PipedInputStream(new PipedOutputStream());
+        ProcessShell<String> sh = ProcessShell.get(javaCommand, "-cp", testClassPath, TestMainEnv.class.getName())
+                .setInputStream(neverEnds)
+                .setOutputString();
+        Assert.assertEquals("output after exit", String.format("HELLO=null%n"),
+                sh.startAndGet(10, TimeUnit.SECONDS));
+        for (int i = 0; i < 100 && !sh.getExecutedThreads().isEmpty(); ++i) {
+            Thread.sleep(50);
+        }
+        Assert.assertEquals("no running tasks", List.of(), sh.getExecutedThreads());
+    }
+
+    @Test
+    public void testRunAsync() throws Exception {
+        List<CompletableFuture<String>> outs = new ArrayList<>();
+        for (int i = 0; i < 10; ++i) {
+            outs.add(ProcessShell.get(javaCommand, "-cp", testClassPath, TestMain.class.getName(), "hello" + i)
+                    .runToStringAsync());
+        }
+        CompletableFuture<Integer> code = ProcessShell.get(javaCommand, "-cp", testClassPath, TestMainExit.class.getName(), "hello")
+                .setOutputString()
+                .runToReturnCodeAsync();
+        Assert.assertFalse("not blocked", code.isDone() || outs.stream().anyMatch(CompletableFuture::isDone));
+        for (int i = 0; i < outs.size(); ++i) {
+            Assert.assertEquals("runToStringAsync", String.format("finish:hello%d%n", i), outs.get(i).get(10, TimeUnit.SECONDS));
+        }
+        Assert.assertEquals("runToReturnCodeAsync", 123, (int) code.get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testRunToLinesAsync() throws Exception {
+        Assert.assertEquals("runToLinesAsync", Arrays.asList("finish:hello", "world"),
+                ProcessShell.get(javaCommand, "-cp", testClassPath, TestMain.class.getName(), "hello\nworld")
+                        .runToLinesAsync()
+                        .get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testFileRedirects() throws Exception {
+        Path dir = Files.createTempDirectory("process-shell-test");
+        Path in = Files.writeString(dir.resolve("in.txt"), "hello\nworld\n");
+        Path out = dir.resolve("out.txt");
+        Path err = dir.resolve("err.txt");
+        ProcessShell<Path> sh = ProcessShell.get(javaCommand, "-cp", testClassPath, TestMainRead.class.getName())
+                .setInputFile(in)
+                .setErrorFile(err)
+                .setOutputFile(out);
+        Assert.assertEquals("result", out, sh.runAsync().get(10, TimeUnit.SECONDS));
+        Assert.assertEquals("redirected input", ProcessBuilder.Redirect.Type.READ, sh.getBuilder().redirectInput().type());
+        Assert.assertEquals("output", String.format("<hello>%n<world>%n"), Files.readString(out));
+        Assert.assertEquals("error", "", Files.readString(err));
+
+        ProcessShell.get(javaCommand, "-cp", testClassPath, TestMainError.class.getName(), "a", "b")
+                .setErrorFileAppend(err)
+                .setOutputFileAppend(out)
+                .startAndGet();
+        Assert.assertEquals("appended output", String.format("<hello>%n<world>%nout:b%n"), Files.readString(out));
+        Assert.assertEquals("appended error", String.format("error:a%n"), Files.readString(err));
+    }
+
+    @Test
+    public void testFileByTransfer() throws Exception {
+        Path dir = Files.createTempDirectory("process-shell-test");
+        Path in = Files.writeString(dir.resolve("in.txt"), "hello\n");
+        Path out = dir.resolve("out.txt");
+        ProcessShell.get(javaCommand, "-cp", testClassPath, TestMainRead.class.getName())
+                .setInputFileByTransfer(in)
+                .setOutputFileByTransfer(out)
+                .startAndGet();
+        Assert.assertEquals("output", String.format("<hello>%n"), Files.readString(out));
+    }
+
+    @Test
+    public void testSetOutputLineViews() {
+        List<String> lines = new ArrayList<>();
+        Assert.assertEquals("count", 3L, (long) ProcessShell.get(javaCommand, "-cp", testClassPath, TestMain.class.getName(), "hello\nworld\n")
+                .setOutputLineViews(line -> lines.add(line.toString()))
+                .startAndGet());
+        Assert.assertEquals("setOutputLineViews", Arrays.asList("finish:hello", "world", ""), lines);
+    }
+
     public static class TestMainExit {
         public static void main(String[] args) throws Exception {
             Thread.sleep(1000);
@@ -0,0 +1,56 @@
+package org.autogui.exec;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Map;
+import java.util.Set;
+
+public class SourceFingerprintTest {
+    @Test
+    public void testChangedRoots() throws Exception {
+        Path project = Files.createTempDirectory("mvn-exec-sources-test");
+        Files.writeString(project.resolve("pom.xml"), "<project/>");
+        Path main = project.resolve("src/main/java/a/A.java");
+        Files.createDirectories(main.getParent());
+        Files.writeString(main, "package a; class A {}");
+
+        SourceFingerprint sources = new SourceFingerprint(project.toFile());
+        Map<String, String> fp = sources.getFingerprint();
+        Assert.assertEquals("no classes", Set.of("pom.xml", "src/main/java"), sources.getChangedRoots(fp));
+
+        sources.save(fp);
+        Assert.assertEquals("saved", Set.of(), sources.getChangedRoots(sources.getFingerprint()));
+
+        Files.setLastModifiedTime(main, FileTime.fromMillis(Files.getLastModifiedTime(main).toMillis() + 10_000L));
+        Assert.assertEquals("touched", Set.of("src/main/java"), sources.getChangedRoots(sources.getFingerprint()));
+
+        Path test = project.resolve("src/test/java/a/ATest.java");
+        Files.createDirectories(test.getParent());
+        Files.writeString(test, "package a; class ATest {}");
+        Set<String> changed = sources.getChangedRoots(sources.getFingerprint());
+        Assert.assertTrue("added test", changed.contains("src/test/java"));
+        Assert.assertTrue("test root", changed.stream().anyMatch(SourceFingerprint::isTestRoot));
+    }
+
+    @Test
+    public void testNoSavedFingerprint() throws Exception {
+        Path project = Files.createTempDirectory("mvn-exec-sources-test");
+        Path main = project.resolve("src/main/java/a/A.java");
+        Files.createDirectories(main.getParent());
+        Files.writeString(main, "package a; class A {}");
+        Path cls = project.resolve("target/classes/a/A.class");
+        Files.createDirectories(cls.getParent());
+        Files.writeString(cls, "a");
+
+        SourceFingerprint sources = new SourceFingerprint(project.toFile());
+        Files.setLastModifiedTime(main, FileTime.fromMillis(Files.getLastModifiedTime(cls).toMillis() - 10_000L));
+        Assert.assertEquals("older sources", Set.of(), sources.getChangedRoots(sources.getFingerprint()));
+
+        Files.setLastModifiedTime(main, FileTime.fromMillis(Files.getLastModifiedTime(cls).toMillis() + 10_000L));
+        Assert.assertEquals("newer sources", Set.of("src/main/java"), sources.getChangedRoots(sources.getFingerprint()));
+    }
+}
@@ -0,0 +1,73 @@
+package org.autogui.exec;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * A benchmark of throughput of stdout of a child process by the plain loop with an 8KB array and by {@link StreamTransfer}.
+ * <pre>
+ *     java -cp target/classes:target/test-classes:target/mods/asm-9.7.jar org.autogui.exec.StreamTransferBench [MB] [rounds] [bufferKB]
+ * </pre>
+ * The child {@link Dumper} writes the given megabytes to its stdout, and the parent discards them.
+ */
+public class StreamTransferBench {
+    public static void main(String[] args) throws Exception {
+        int megabytes = args.length > 0 ? Integer.parseInt(args[0]) : 512;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        int bufferSize = (args.length > 2 ? Integer.parseInt(args[2]) : 64) * 1024;
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        String cp = System.getProperty("java.class.path");
+        StreamTransfer transfer = new StreamTransfer(bufferSize, 4);
+
+        System.out.printf("MB=%,d rounds=%,d buffer=%,d%n", megabytes, rounds, bufferSize);
+        for (int r = 0; r < rounds; ++r) {
+            long start = System.nanoTime();
+            ProcessShell.get(java, "-cp", cp, Dumper.class.getName(), Integer.toString(megabytes))
+                    .setOutput(p -> {
+                        try (InputStream in = p.getInputStream()) {
+                            loop(in, OutputStream.nullOutputStream());
+                        }
+                    })
+                    .startAndGet();
+            report("loop", megabytes, start);
+
+            start = System.nanoTime();
+            ProcessShell.get(java, "-cp", cp, Dumper.class.getName(), Integer.toString(megabytes))
+                    .setTransfer(transfer)
+                    .setOutputStream(OutputStream.nullOutputStream())
+                    .startAndGet();
+            report("transfer", megabytes, start);
+        }
+        System.out.println(transfer.getMetrics());
+    }
+
+    /** the previous implementation of {@link ProcessShell#transfer(InputStream, OutputStream)} */
+    static void loop(InputStream input, OutputStream out) throws IOException {
+        byte[] buffer = new byte[8192];
+        while (true) {
+            int len = input.read(buffer);
+            if (len < 0) {
+                break;
+            }
+            out.write(buffer, 0, len);
+        }
+    }
+
+    static void report(String name, int megabytes, long startNanos) {
+        double sec = (System.nanoTime() - startNanos) / 1_000_000_000.0;
+        System.out.printf("%-10s %8.3fs %10.1fMB/s%n", name, sec, megabytes / sec);
+    }
+
+    public static class Dumper {
+        public static void main(String[] args) throws IOException {
+            long total = Long.parseLong(args[0]) * 1024 * 1024;
+            byte[] chunk = new byte[256 * 1024];
+            for (long n = 0; n < total; n += chunk.length) {
+                System.out.write(chunk, 0, (int) Math.min(chunk.length, total - n));
+            }
+            System.out.flush();
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package org.autogui.exec;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+
+public class StreamTransferTest {
+    static byte[] data(int size) {
+        byte[] data = new byte[size];
+        new Random(42).nextBytes(data);
+        return data;
+    }
+
+    @Test
+    public void testTransferPooled() throws Exception {
+        StreamTransfer transfer = new StreamTransfer(1024, 4);
+        byte[] data = data(10_000);
+        for (int i = 0; i < 3; ++i) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            Assert.assertEquals("bytes", data.length, transfer.transfer(new ByteArrayInputStream(data), out));
+            Assert.assertArrayEquals("data", data, out.toByteArray());
+        }
+        Assert.assertEquals("reused buffer", 1, transfer.getAllocatedBuffers());
+        Assert.assertEquals("transfers", 3, transfer.getTransfers());
+        Assert.assertEquals("metrics bytes", data.length * 3L, transfer.getTransferredBytes());
+    }
+
+    @Test
+    public void testTransferToFile() throws Exception {
+        StreamTransfer transfer = new StreamTransfer(1000, 4);
+        byte[] data = data(10_500);
+        Path file = Files.createTempFile("stream-transfer-test", ".bin");
+        try (FileChannel out = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            out.write(ByteBuffer.wrap(new byte[] {1, 2, 3}));
+            Assert.assertEquals("bytes", data.length, transfer.transfer(new ByteArrayInputStream(data), out));
+            Assert.assertEquals("position", data.length + 3, out.position());
+        }
+        byte[] written = Files.readAllBytes(file);
+        Assert.assertEquals("size", data.length + 3, written.length);
+        Assert.assertArrayEquals("data", data, Arrays.copyOfRange(written, 3, written.length));
+        Assert.assertEquals("no buffers", 0, transfer.getAllocatedBuffers());
+    }
+
+    @Test
+    public void testTransferToPipe() throws Exception {
+        Path fifo = Files.createTempDirectory("stream-transfer-test").resolve("fifo");
+        Process mkfifo;
+        try {
+            mkfifo = new ProcessBuilder("mkfifo", fifo.toString()).start();
+        } catch (Exception ex) {
+            mkfifo = null;
+        }
+        Assume.assumeTrue("mkfifo", mkfifo != null && mkfifo.waitFor() == 0);
+        StreamTransfer transfer = new StreamTransfer(1000, 4);
+        byte[] data = data(10_500);
+        CompletableFuture<byte[]> read = CompletableFuture.supplyAsync(() -> {
+            try (InputStream in = new FileInputStream(fifo.toFile())) {
+                ByteArrayOutputStream buf = new ByteArrayOutputStream();
+                in.transferTo(buf);
+                return buf.toByteArray();
+            } catch (Exception ex) {
+                throw new RuntimeException(ex);
+            }
+        });
+        try (FileOutputStream out = new FileOutputStream(fifo.toFile())) { //not seekable
+            Assert.assertEquals("bytes", data.length, transfer.transfer(new ByteArrayInputStream(data), out));
+        }
+        Assert.assertArrayEquals("data", data, read.get());
+    }
+}
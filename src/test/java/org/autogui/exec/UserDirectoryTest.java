@@ -0,0 +1,37 @@
+package org.autogui.exec;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+
+public class UserDirectoryTest {
+    @Test
+    public void testPrepare() throws Exception {
+        Path dir = Files.createTempDirectory("mvn-exec-user-dir-test").resolve("mvn-exec-user");
+        UserDirectory.prepare(dir);
+        Assert.assertEquals("created", "rwx------", PosixFilePermissions.toString(Files.getPosixFilePermissions(dir)));
+        UserDirectory.prepare(dir); //existing
+    }
+
+    @Test
+    public void testRejectShared() throws Exception {
+        Path dir = Files.createTempDirectory("mvn-exec-user-dir-test").resolve("mvn-exec-user");
+        Files.createDirectory(dir);
+        Files.setPosixFilePermissions(dir, PosixFilePermissions.fromString("rwxrwxrwx"));
+        Assert.assertThrows(IOException.class, () -> UserDirectory.prepare(dir));
+
+        Path link = dir.resolveSibling("link");
+        Files.createSymbolicLink(link, dir);
+        Assert.assertThrows(IOException.class, () -> UserDirectory.check(link));
+
+        Path file = Files.writeString(UserDirectory.prepare(dir.resolveSibling("private")).resolve("file"), "x");
+        Files.setPosixFilePermissions(file, PosixFilePermissions.fromString("rw-r--r--"));
+        Assert.assertThrows(IOException.class, () -> UserDirectory.check(file));
+        Files.setPosixFilePermissions(file, PosixFilePermissions.fromString("rw-------"));
+        UserDirectory.check(file);
+    }
+}